@@ -1,5 +1,18 @@
 import java.awt.Color;
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
 import tester.*;
 import javalib.impworld.*;
 import javalib.worldimages.*;
@@ -23,7 +36,6 @@ class Node
     Node right;
     Node down;
     Node left;
-    int checked; // how many times this node has already been checked by a search algorithm
 
     // Constructs a Node
     Node(Posn p)
@@ -35,7 +47,6 @@ class Node
         this.right = this;
         this.down = this;
         this.left = this;
-        this.checked = 0;
     }
 }
 
@@ -67,23 +78,491 @@ class Edge
     }
     public WorldImage drawWallDown() // draw a wall below node A
     {
-        Posn left = new Posn(this.a.p.x * Maze.CELL_SIZE,
-                             this.a.p.y * Maze.CELL_SIZE + Maze.CELL_SIZE);
-        Posn right = new Posn(this.a.p.x * Maze.CELL_SIZE + Maze.CELL_SIZE,
-                             this.a.p.y * Maze.CELL_SIZE + Maze.CELL_SIZE);
-        return new LineImage(left, right, Maze.WALL_COLOR);
+        return Edge.wallBelow(this.a.p.x, this.a.p.y);
     }
     public WorldImage drawWallRight() // draw a wall to the right of node A
     {
-        Posn top = new Posn(this.a.p.x * Maze.CELL_SIZE + Maze.CELL_SIZE,
-                             this.a.p.y * Maze.CELL_SIZE);
-        Posn bottom = new Posn(this.a.p.x * Maze.CELL_SIZE + Maze.CELL_SIZE,
-                                this.a.p.y * Maze.CELL_SIZE + Maze.CELL_SIZE);
+        return Edge.wallRightOf(this.a.p.x, this.a.p.y);
+    }
+    static WorldImage wallBelow(int x, int y) // draw a wall below the cell at (x, y)
+    {
+        Posn left = new Posn(x * Maze.CELL_SIZE,
+                             y * Maze.CELL_SIZE + Maze.CELL_SIZE);
+        Posn right = new Posn(x * Maze.CELL_SIZE + Maze.CELL_SIZE,
+                             y * Maze.CELL_SIZE + Maze.CELL_SIZE);
+        return new LineImage(left, right, Maze.WALL_COLOR);
+    }
+    static WorldImage wallRightOf(int x, int y) // draw a wall to the right of the cell at (x, y)
+    {
+        Posn top = new Posn(x * Maze.CELL_SIZE + Maze.CELL_SIZE,
+                             y * Maze.CELL_SIZE);
+        Posn bottom = new Posn(x * Maze.CELL_SIZE + Maze.CELL_SIZE,
+                                y * Maze.CELL_SIZE + Maze.CELL_SIZE);
         return new LineImage(top, bottom, Maze.WALL_COLOR);
     }
+    static WorldImage pathBetween(int x1, int y1, int x2, int y2) // draw a path between two cell centres
+    {
+        Posn nodeA = new Posn(x1 * Maze.CELL_SIZE + Maze.CELL_SIZE / 2,
+                                y1 * Maze.CELL_SIZE + Maze.CELL_SIZE / 2);
+        Posn nodeB = new Posn(x2 * Maze.CELL_SIZE + Maze.CELL_SIZE / 2,
+                                y2 * Maze.CELL_SIZE + Maze.CELL_SIZE / 2);
+        return new LineImage(nodeA, nodeB, Maze.PATH_COLOR);
+    }
+
+
+}
+
+//a compact maze topology: two bits per cell, cells indexed by y * width + x
+//the low bit of a cell is set when the passage to its right is open, the high bit
+//when the passage below it is open; up and left are read from the neighbouring cell
+class MazeGrid
+{
+    static final int UP = 0;
+    static final int RIGHT = 1;
+    static final int DOWN = 2;
+    static final int LEFT = 3;
+    static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    final int width;
+    final int height;
+    final long[] bits; // 32 cells per word
+    long seed; // the seed the maze was generated from
+    volatile byte[] weights; // the passage weights, once weights() has worked them out
+
+    MazeGrid(int width, int height)
+    {
+        this(width, height, new long[MazeGrid.wordsFor(width, height)]);
+    }
+    MazeGrid(int width, int height, long[] bits) // bits is null when a subclass keeps the words
+    {
+        this.width = width;
+        this.height = height;
+        this.bits = bits;
+    }
+
+    // how many 64 bit words a grid of the given size needs
+    static int wordsFor(int width, int height)
+    {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("maze size out of range: " + width + "x" + height);
+        }
+        return (int) (((long) width * height + 31) / 32);
+    }
+
+    // builds a grid with a passage for every edge in the given list
+    static MazeGrid fromEdges(int width, int height, ArrayList<Edge> passages)
+    {
+        MazeGrid grid = new MazeGrid(width, height);
+        for (Edge e: passages)
+        {
+            int cell = grid.index(e.a.p.x, e.a.p.y);
+            if (e.directionIsVertical())
+            {
+                grid.open(cell, DOWN);
+            }
+            else
+            {
+                grid.open(cell, RIGHT);
+            }
+        }
+        return grid;
+    }
+
+    int index(int x, int y)
+    {
+        return y * this.width + x;
+    }
+    int xOf(int cell)
+    {
+        return cell % this.width;
+    }
+    int yOf(int cell)
+    {
+        return cell / this.width;
+    }
+    int cells()
+    {
+        return this.width * this.height;
+    }
+
+    // is the passage leaving the cell in the given direction open
+    boolean isOpen(int cell, int dir)
+    {
+        switch (dir)
+        {
+            case RIGHT:
+                return this.bit(2 * cell);
+            case DOWN:
+                return this.bit(2 * cell + 1);
+            case LEFT:
+                return cell % this.width != 0 && this.bit(2 * (cell - 1));
+            case UP:
+                return cell >= this.width && this.bit(2 * (cell - this.width) + 1);
+            default:
+                return false;
+        }
+    }
+    // the cell reached by moving in the given direction, or -1 if a wall is in the way
+    int neighbor(int cell, int dir)
+    {
+        if (!this.isOpen(cell, dir))
+        {
+            return -1;
+        }
+        return MazeGrid.step(cell, dir, this.width);
+    }
+    // writes the open neighbours of the cell into out and returns how many there are
+    int neighbors(int cell, int[] out)
+    {
+        int count = 0;
+        for (int dir = UP; dir <= LEFT; dir++)
+        {
+            if (this.isOpen(cell, dir))
+            {
+                out[count] = MazeGrid.step(cell, dir, this.width);
+                count++;
+            }
+        }
+        return count;
+    }
+    // opens the passage leaving the cell in the given direction; the caller keeps it inside the grid
+    void open(int cell, int dir)
+    {
+        int b = this.bitOf(cell, dir);
+        this.bits[b >>> 6] |= 1L << b;
+    }
+    // opens a passage while other threads may be opening passages that share its word
+    void openAtomic(int cell, int dir)
+    {
+        int b = this.bitOf(cell, dir);
+        WORDS.getAndBitwiseOr(this.bits, b >>> 6, 1L << b);
+    }
+    // closes the passage leaving the cell in the given direction
+    void close(int cell, int dir)
+    {
+        int b = this.bitOf(cell, dir);
+        this.bits[b >>> 6] &= ~(1L << b);
+    }
+    // closes every passage, so the grid can be carved again
+    void clear()
+    {
+        Arrays.fill(this.bits, 0L);
+        this.weights = null;
+    }
+    // is there a cell next to this one in the given direction
+    boolean inside(int cell, int dir)
+    {
+        switch (dir)
+        {
+            case UP:
+                return cell >= this.width;
+            case RIGHT:
+                return cell % this.width < this.width - 1;
+            case DOWN:
+                return cell < this.cells() - this.width;
+            default:
+                return cell % this.width > 0;
+        }
+    }
+    // a copy of the maze on the heap, which can be changed whatever kind of grid this is
+    MazeGrid copy()
+    {
+        MazeGrid copy = new MazeGrid(this.width, this.height);
+        for (int k = 0; k < this.words(); k++)
+        {
+            copy.bits[k] = this.word(k);
+        }
+        copy.seed = this.seed;
+        return copy;
+    }
+    // the number of open passages in the grid
+    int passages()
+    {
+        int count = 0;
+        for (int k = 0; k < this.words(); k++)
+        {
+            count += Long.bitCount(this.word(k));
+        }
+        return count;
+    }
+
+    static int step(int cell, int dir, int width)
+    {
+        switch (dir)
+        {
+            case RIGHT:
+                return cell + 1;
+            case DOWN:
+                return cell + width;
+            case LEFT:
+                return cell - 1;
+            default:
+                return cell - width;
+        }
+    }
+    static int opposite(int dir)
+    {
+        return (dir + 2) % 4;
+    }
+    // the weight of every cell's right and down edge, in the layout KruskalGenerator uses, worked
+    // out from the seed the first time they are needed and then kept; null if the maze has too
+    // many cells for one array. the seed must not change once they have been asked for
+    byte[] weights()
+    {
+        byte[] weights = this.weights;
+        if (weights == null && this.cells() <= KruskalGenerator.MAX_CELLS)
+        {
+            weights = new byte[2 * this.cells()];
+            for (int cell = 0; cell < this.cells(); cell++)
+            {
+                int x = this.xOf(cell);
+                int y = this.yOf(cell);
+                weights[2 * cell] = (byte) EdgeWeights.weight(this.seed, x, y, RIGHT);
+                weights[2 * cell + 1] = (byte) EdgeWeights.weight(this.seed, x, y, DOWN);
+            }
+            this.weights = weights; // racing threads work out the same array, so either will do
+        }
+        return weights;
+    }
+    // the cost of the passage leaving the cell in the given direction, in [0, EDGE_WEIGHTS):
+    // the weight the seed gives that edge, the one Kruskal's algorithm ordered it by
+    int weight(int cell, int dir)
+    {
+        if (dir == UP || dir == LEFT)
+        {
+            cell = MazeGrid.step(cell, dir, this.width);
+            dir = MazeGrid.opposite(dir);
+        }
+        return EdgeWeights.weight(this.seed, this.xOf(cell), this.yOf(cell), dir);
+    }
+    boolean bit(int b)
+    {
+        return (this.word(b >>> 6) & (1L << b)) != 0;
+    }
+    long word(int k) // the kth 64 bit word of the packed cells
+    {
+        return this.bits[k];
+    }
+    int words()
+    {
+        return this.bits.length;
+    }
+    // the bit that stores the passage leaving the cell in the given direction
+    int bitOf(int cell, int dir)
+    {
+        switch (dir)
+        {
+            case RIGHT:
+                return 2 * cell;
+            case DOWN:
+                return 2 * cell + 1;
+            case LEFT:
+                return 2 * (cell - 1);
+            default:
+                return 2 * (cell - this.width) + 1;
+        }
+    }
+}
+//a MazeGrid read straight out of a memory mapped maze file, so the walls never have to be
+//copied onto the heap. the mapping is read only, so the maze cannot be changed
+class MappedMazeGrid extends MazeGrid
+{
+    final LongBuffer mapped;
+
+    MappedMazeGrid(int width, int height, long seed, LongBuffer mapped)
+    {
+        super(width, height, null);
+        this.seed = seed;
+        this.mapped = mapped;
+    }
+
+    long word(int k)
+    {
+        return this.mapped.get(k);
+    }
+    int words()
+    {
+        return this.mapped.limit();
+    }
+    void open(int cell, int dir)
+    {
+        throw new UnsupportedOperationException("a mapped maze is read only");
+    }
+    void openAtomic(int cell, int dir)
+    {
+        throw new UnsupportedOperationException("a mapped maze is read only");
+    }
+    void close(int cell, int dir)
+    {
+        throw new UnsupportedOperationException("a mapped maze is read only");
+    }
+    void clear()
+    {
+        throw new UnsupportedOperationException("a mapped maze is read only");
+    }
+}
+
+//reads and writes the maze file format: a 32 byte header - magic number, format version,
+//width, height and seed - followed by the MazeGrid words, all little endian. loading maps
+//the file rather than reading it, so even the biggest maze is opened without a heap copy
+class MazeFile
+{
+    static final int MAGIC = 0x455a414d; // "MAZE" when read as little endian bytes
+    static final int VERSION = 1;
+    static final int HEADER = 32;
+    static final int CHUNK_WORDS = 1 << 17; // words written per buffer
+
+    static void save(MazeGrid maze, Path path) throws IOException
+    {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MazeFile.write(maze, out, MazeFile.buffer());
+        }
+    }
+    // a buffer for write and read to go through, which may be kept and used again
+    static ByteBuffer buffer()
+    {
+        return ByteBuffer.allocateDirect(8 * CHUNK_WORDS).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    // writes the maze file for a maze to a channel through the given buffer
+    static void write(MazeGrid maze, WritableByteChannel out, ByteBuffer buffer) throws IOException
+    {
+        buffer.clear();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(maze.width).putInt(maze.height).putLong(maze.seed);
+        while (buffer.position() < HEADER) // the rest of the header is kept for later versions
+        {
+            buffer.put((byte) 0);
+        }
+        for (int k = 0; k < maze.words(); k++)
+        {
+            buffer.putLong(maze.word(k));
+            if (!buffer.hasRemaining())
+            {
+                buffer.flip();
+                MazeFile.writeFully(out, buffer);
+                buffer.clear();
+            }
+        }
+        buffer.flip();
+        MazeFile.writeFully(out, buffer);
+    }
+    // reads the next of the maze files written one after another to a channel onto the heap,
+    // or returns null if the channel is at its end
+    static MazeGrid read(ReadableByteChannel in, ByteBuffer buffer) throws IOException
+    {
+        buffer.clear().limit(HEADER);
+        MazeFile.readFully(in, buffer);
+        if (buffer.position() == 0)
+        {
+            return null;
+        }
+        buffer.flip();
+        if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC)
+        {
+            throw new IOException("not a maze file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION)
+        {
+            throw new IOException("unsupported maze file version " + version);
+        }
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        long seed = buffer.getLong();
+        MazeGrid maze;
+        try
+        {
+            maze = new MazeGrid(width, height);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("bad maze size", e);
+        }
+        maze.seed = seed;
+        int k = 0;
+        while (k < maze.bits.length)
+        {
+            buffer.clear().limit(8 * Math.min(CHUNK_WORDS, maze.bits.length - k));
+            MazeFile.readFully(in, buffer);
+            if (buffer.hasRemaining())
+            {
+                throw new IOException("truncated maze file");
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                maze.bits[k++] = buffer.getLong();
+            }
+        }
+        return maze;
+    }
 
+    // maps a maze file; the maze stays valid after the file is closed
+    static MappedMazeGrid load(Path path) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && in.read(header) >= 0)
+            {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < HEADER || header.getInt() != MAGIC)
+            {
+                throw new IOException(path + " is not a maze file");
+            }
+            int version = header.getInt();
+            if (version != VERSION)
+            {
+                throw new IOException(path + " has unsupported maze file version " + version);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            long seed = header.getLong();
+            int words;
+            try
+            {
+                words = MazeGrid.wordsFor(width, height);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException(path + " has a bad maze size", e);
+            }
+            if (in.size() < HEADER + 8L * words)
+            {
+                throw new IOException(path + " is truncated");
+            }
+            MappedByteBuffer body = in.map(FileChannel.MapMode.READ_ONLY, HEADER, 8L * words);
+            return new MappedMazeGrid(width, height, seed, body.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+        }
+    }
 
+    static ByteBuffer header(int width, int height, long seed)
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putLong(seed);
+        header.rewind();
+        return header;
+    }
+    static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining() && in.read(buffer) >= 0)
+        {
+            // keep reading
+        }
+    }
+    static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer);
+        }
+    }
 }
+
 class Maze extends World
 {
     static final int CELL_SIZE = 20; //the size of a cell in pixels 
@@ -92,66 +571,176 @@ class Maze extends World
     static final Color BACKGROUND_COLOR = Color.WHITE;
     static final Color WALL_COLOR = Color.BLACK;
     static final Color PATH_COLOR = Color.RED;
-    HashMap<Node, Edge> visited = new HashMap<Node, Edge>();
-    ArrayList<Node> searched = new ArrayList<Node>();
+    static final int EDGE_WEIGHTS = 100; // edge weights are drawn from [0, EDGE_WEIGHTS)
+    static final String SAVE_FILE = "maze.bin"; // where the S key saves and the L key loads
+    static final String PICTURE_FILE = "maze.png"; // where the O key writes a picture of the maze
+    static final int MAX_STEPS_PER_TICK = 1 << 20;
+    static final int TICK_MILLIS = 10; // the slice of each frame the T key gives the search
+    static final int HEAT_SHADES = 32; // the heat map fades from red far away to green at the exit
+    static final int SWARM_SIZE = 100; // bots g puts in the maze
+    final int mazeWidth; // the width of this maze in walkable cells, MAZE_WIDTH unless given
+    final int mazeHeight;
+    long seed; // the seed the current maze was built from
+    Random seeds = new Random(); // picks the seed for each new maze
+    GridSearch search; // the automatic search in progress, if any
+    int player; // the cell the player is on in manual mode
+    byte[] marks; // per cell marks of the current run, GridSearch.EXPANDED or GridSearch.ON_PATH
     boolean finished = false;
     boolean showWalls;
     boolean showPath;
-    boolean depth;
-    boolean breadth;
+    boolean incremental = true; // repaint only the cells whose marks changed since the last frame
+    WorldImage wallLayer; // cached walls and path, dropped whenever they change
+    WorldImage cellLayer; // cached background and cells, dropped when a new run starts
+    byte[] drawn; // the mark each cell has in cellLayer
+    int[] dirty; // cells whose marks may have changed since cellLayer was last brought up to date
+    boolean[] queued; // is the cell already in dirty
+    int dirtyCount;
+    boolean solving; // is onTick stepping an automatic search
+    int stepsPerTick = 1; // cells the search expands each frame
+    int tickMillis = 0; // if positive, the search instead expands cells for this long each frame
 
 
+    // the maze as Nodes and Edges, as it was first written. the maze itself is topology; these
+    // are only built from it when cuts(), leftovers() or nodeAt ask, and dropped when it changes
     ArrayList<Edge> grid; // the grid of all possible connections between any two nodes
     ArrayList<Edge> cuts; // all the edges that get cut out 
     ArrayList<Edge> leftovers; // the edges leftover after cuts
     ArrayList<ArrayList<Node>> nodes; // all the nodes
+    MazeGrid topology; // the maze, two bits a cell, that generation, the searches and makeImage use
+    TreePathIndex pathIndex; // built the first time a route is asked for, dropped with the maze
+    boolean loops; // the maze turned out not to be a tree, so routes are searched for instead
+    int exit; // the cell searches head for
+    DistanceField exitField; // built the first time a hint is asked for, dropped with the maze
+    boolean showHeat; // draw every cell coloured by how far it is from the exit
+    boolean showHint; // point the player towards the exit and say how far it is
+    WorldImage heatLayer; // cached heat map, dropped whenever the field changes
+    AgentSwarm swarm; // bots walking to the exit alongside the player, if g turned them on
+    SearchTrace trace; // every cell the current run has expanded or walked onto, in order
+    int replayStep = -1; // how far into the trace the replay has got, -1 when not replaying
+    int[] replayCounts; // how often each cell comes up in the trace before replayStep
+    byte[] liveMarks; // the run's own marks, put back when the replay stops
+    final MazeMetrics metrics = new MazeMetrics();
 
     Maze()
     {
+        this(MAZE_WIDTH, MAZE_HEIGHT);
+    }
+
+    Maze(int width, int height) // a maze of any size, for headless runs and benchmarks
+    {
+        this(width, height, new Random().nextLong());
+    }
+
+    Maze(int width, int height, long seed) // the same seed always builds the same maze
+    {
+        this.mazeWidth = width;
+        this.mazeHeight = height;
+        this.seed = seed;
         this.showWalls = true;
         this.showPath = false;
-        this.depth = false;
-        this.breadth = false;
-        this.initializeNodes();
-        this.initializeGrid();
-        this.initializeMaze();
+        this.solving = false;
+        this.generate();
+        this.startManual();
+    }
+
+    Maze(MazeGrid maze) // a maze loaded from somewhere else, such as a maze file
+    {
+        this.mazeWidth = maze.width;
+        this.mazeHeight = maze.height;
+        this.showWalls = true;
+        this.load(maze);
     }
 
     Maze(String dummy) // dummy constructor for testing
     {
+        this.mazeWidth = MAZE_WIDTH;
+        this.mazeHeight = MAZE_HEIGHT;
         this.nodes = new ArrayList<ArrayList<Node>>();
         this.grid = new ArrayList<Edge>();
         this.leftovers = new ArrayList<Edge>();
         this.cuts = new ArrayList<Edge>();
-        this.visited = new HashMap<Node, Edge>();
-        this.searched = new ArrayList<Node>();
+    }
+
+    // builds the maze for this.seed straight into a MazeGrid, timing it into metrics. it is
+    // the maze initializeNodes, initializeGrid and initializeMaze would build from the seed,
+    // without a Node or Edge for every cell and passage
+    void generate()
+    {
+        long start = System.nanoTime();
+        KruskalGenerator generator = new KruskalGenerator(); // its buffers go once the maze is built
+        MazeGrid maze = generator.generate(this.mazeWidth, this.mazeHeight, this.seed);
+        this.useTopology(maze);
+        this.dropEdges();
+        this.metrics.generated(this, generator, System.nanoTime() - start);
+    }
+    // makes the given grid the maze and drops everything worked out from the old one
+    void useTopology(MazeGrid maze)
+    {
+        this.topology = maze;
+        this.pathIndex = null;
+        this.loops = false;
+        this.exit = this.topology.cells() - 1;
+        this.exitField = null;
+        this.heatLayer = null;
+        this.wallLayer = null;
+    }
+    // lets go of the Nodes and Edges, which no longer match the topology
+    void dropEdges()
+    {
+        this.nodes = null;
+        this.grid = null;
+        this.cuts = null;
+        this.leftovers = null;
+    }
+    // builds the Nodes and Edges for the topology if they are not already there, timing the
+    // build into metrics
+    void buildEdges()
+    {
+        if (this.cuts == null)
+        {
+            long start = System.nanoTime();
+            this.initializeNodes();
+            this.initializeGrid();
+            this.initializeMaze(this.topology);
+            this.metrics.builtEdges(this, System.nanoTime() - start);
+        }
+    }
+    ArrayList<Edge> cuts() // the passages as Edges, in the order Kruskal's algorithm cut them
+    {
+        this.buildEdges();
+        return this.cuts;
+    }
+    ArrayList<Edge> leftovers() // the walls as Edges, in weight order
+    {
+        this.buildEdges();
+        return this.leftovers;
+    }
+    ArrayList<ArrayList<Node>> nodes() // the Nodes, linked to their neighbours through the cuts
+    {
+        this.buildEdges();
+        return this.nodes;
     }
 
     public void initializeNodes()
     {
         nodes = new ArrayList<ArrayList<Node>>();
-        for (int h = 0; h < MAZE_HEIGHT; h++)
+        for (int h = 0; h < this.mazeHeight; h++)
         {
             nodes.add(new ArrayList<Node>());
-            for (int w = 0; w < MAZE_WIDTH; w++)
+            for (int w = 0; w < this.mazeWidth; w++)
             {
                 Node newNode = new Node(new Posn(w, h));
-                if ( h == 0 && w == 0)
-                {
-                    newNode.checked = 2;
-                }
                 nodes.get(h).add(newNode);
             }
         }
         this.setVertical();
         this.setHorizontal();
-        searched.add(nodes.get(0).get(0));
     }
     public void setVertical()
     {
-        for (int h = 1; h < MAZE_HEIGHT; h++)
+        for (int h = 1; h < this.mazeHeight; h++)
         {
-            for (int w = 0; w < MAZE_WIDTH; w++)
+            for (int w = 0; w < this.mazeWidth; w++)
             {
                 nodes.get(h).get(w).up = nodes.get(h - 1).get(w);
                 nodes.get(h - 1).get(w).down = nodes.get(h).get(w);
@@ -160,500 +749,7666 @@ class Maze extends World
     }
     public void setHorizontal()
     {
-        for (int h = 0; h < MAZE_HEIGHT; h++)
+        for (int h = 0; h < this.mazeHeight; h++)
         {
-            for (int w = 1; w < MAZE_WIDTH; w++)
+            for (int w = 1; w < this.mazeWidth; w++)
             {
                 nodes.get(h).get(w).left = nodes.get(h).get(w - 1);
                 nodes.get(h).get(w - 1).right = nodes.get(h).get(w);
             }
         }
     }
-
-    // populates the empty grid with all the possible connections between nodes
-    public void initializeGrid() 
+
+    // populates the empty grid with all the possible connections between nodes. the weights
+    // come from the seed, and the edges go in cell order with the right edge before the down
+    // edge, so the maze matches KruskalGenerator's for the same seed
+    public void initializeGrid() 
+    {
+        grid = new ArrayList<Edge>();
+        for (int h = 0; h < this.mazeHeight; h++) 
+        {
+            for (int w = 0; w < this.mazeWidth; w++) 
+            {
+                Node temp = nodes.get(h).get(w);
+                if (w < this.mazeWidth - 1)
+                {
+                    grid.add(new Edge(temp, nodes.get(h).get(w + 1),
+                                      EdgeWeights.weight(this.seed, w, h, MazeGrid.RIGHT)));
+                }
+                if (h < this.mazeHeight - 1)
+                {
+                    grid.add(new Edge(temp, nodes.get(h + 1).get(w),
+                                      EdgeWeights.weight(this.seed, w, h, MazeGrid.DOWN)));
+                }
+            }
+        }
+    }
+
+    //Create maze using Kruskal's algorithm to cut edges out of the maze
+    public void initializeMaze()
+    {
+        DisjointSet uf = new DisjointSet(this.mazeWidth * this.mazeHeight); // keyed by cell index
+        cuts = new ArrayList<Edge>(); // the Spanning tree - the path through the maze
+        leftovers = new ArrayList<Edge>(); // the walls still in the maze
+        for (Edge temp: Maze.byWeight(grid))
+        {
+            // joins the trees of A and B if they are not already the same tree
+            if (uf.union(this.indexOf(temp.a), this.indexOf(temp.b)))
+            {
+                cuts.add(temp); // add the Edge to the Spanning Tree
+            }
+            else
+            {
+                leftovers.add(temp); // the Nodes are already connected, so the wall stays
+            }
+        }
+        grid.clear();
+        this.metrics.finds = uf.finds;
+        this.metrics.findSteps = uf.findSteps;
+        this.linkNodes();
+        MazeGrid maze = MazeGrid.fromEdges(this.mazeWidth, this.mazeHeight, cuts);
+        maze.seed = this.seed;
+        this.useTopology(maze);
+    }
+
+    // splits the grid into cuts and leftovers the way the given maze does rather than by
+    // running Kruskal's algorithm. for a maze built from this seed, the split is exactly the
+    // one initializeMaze makes
+    public void initializeMaze(MazeGrid maze)
+    {
+        cuts = new ArrayList<Edge>();
+        leftovers = new ArrayList<Edge>();
+        for (Edge temp: Maze.byWeight(grid))
+        {
+            int dir = MazeGrid.RIGHT;
+            if (temp.directionIsVertical())
+            {
+                dir = MazeGrid.DOWN;
+            }
+            if (maze.isOpen(this.indexOf(temp.a), dir))
+            {
+                cuts.add(temp);
+            }
+            else
+            {
+                leftovers.add(temp);
+            }
+        }
+        grid.clear();
+        this.linkNodes();
+    }
+
+    // points each node at its neighbours through the cuts, and at itself through the walls
+    void linkNodes()
+    {
+        for (Edge e: leftovers)
+        {
+            this.linkEdge(e, true);
+        }
+        for (Edge e: cuts)
+        {
+            this.linkEdge(e, false);
+        }
+    }
+    void linkEdge(Edge e, boolean wall)
+    {
+        e.isWall = wall;
+        if (wall)
+        {
+            if (e.directionIsVertical())
+            {
+                e.a.down = e.a;
+                e.b.up = e.b;
+            }
+            else
+            {
+                e.a.right = e.a;
+                e.b.left = e.b;
+            }
+        }
+        else
+        {
+            if (e.directionIsVertical())
+            {
+                e.a.down = e.b;
+                e.b.up = e.a;
+            }
+            else
+            {
+                e.a.right = e.b;
+                e.b.left = e.a;
+            }
+        }
+    }
+
+    // knocks down the wall on the given side of the cell; false if there is no wall there
+    boolean openWall(int cell, int dir)
+    {
+        return this.setWall(cell, dir, false);
+    }
+    // puts up a wall on the given side of the cell; false if there already is one, or if that
+    // side is the edge of the maze
+    boolean closeWall(int cell, int dir)
+    {
+        return this.setWall(cell, dir, true);
+    }
+    // changes the topology and drops the Nodes and Edges, to be built again if asked for. a
+    // running LifelongSearch repairs its path; any other search is restarted, since it was
+    // solving a maze that is no longer there
+    boolean setWall(int cell, int dir, boolean wall)
+    {
+        if (!this.topology.inside(cell, dir) || this.topology.isOpen(cell, dir) != wall)
+        {
+            return false;
+        }
+        if (dir == MazeGrid.UP || dir == MazeGrid.LEFT)
+        {
+            cell = MazeGrid.step(cell, dir, this.mazeWidth);
+            dir = MazeGrid.opposite(dir);
+        }
+        this.stopReplay(); // a replay shows the maze as it was
+        this.dropEdges();
+        boolean copied = this.topology instanceof MappedMazeGrid;
+        if (copied) // a loaded maze is read only until now
+        {
+            this.topology = this.topology.copy();
+        }
+        if (wall)
+        {
+            this.topology.close(cell, dir);
+        }
+        else
+        {
+            this.topology.open(cell, dir);
+        }
+        this.wallLayer = null;
+        this.heatLayer = null;
+        this.pathIndex = null; // it may not be a tree any more, or be one again
+        this.loops = false;
+        this.exitField = null;
+        if (this.search instanceof LifelongSearch && !copied)
+        {
+            LifelongSearch lifelong = (LifelongSearch) this.search;
+            if (lifelong.found)
+            {
+                for (int c = lifelong.target; c != lifelong.source; c = lifelong.parents[c])
+                {
+                    this.repaint(c); // the old path is about to be unmarked
+                }
+                this.repaint(lifelong.source);
+            }
+            lifelong.wallChanged(cell, MazeGrid.step(cell, dir, this.mazeWidth));
+            this.solving = true;
+            this.finished = false;
+        }
+        else if (this.search != null)
+        {
+            this.startSearch(this.search.name());
+            this.solving = true;
+        }
+        return true;
+    }
+
+    // the edges in ascending weight order; weights are bounded by EDGE_WEIGHTS, so this is
+    // a stable counting sort and gives the same order as sorting with an EdgeSorter
+    static Edge[] byWeight(ArrayList<Edge> edges)
+    {
+        int[] starts = new int[EDGE_WEIGHTS + 1];
+        for (Edge e: edges)
+        {
+            starts[e.weight + 1]++;
+        }
+        for (int w = 0; w < EDGE_WEIGHTS; w++)
+        {
+            starts[w + 1] += starts[w];
+        }
+        Edge[] ordered = new Edge[edges.size()];
+        for (Edge e: edges)
+        {
+            ordered[starts[e.weight]] = e;
+            starts[e.weight]++;
+        }
+        return ordered;
+    }
+
+    public void depthFirst() // expands the next cell of a depth first search
+    {
+        if (!(this.search instanceof DepthFirstSearch))
+        {
+            this.startSearch("dfs");
+        }
+        this.expand();
+    }
+    public void breadthFirst() // expands the next cell of a breadth first search
+    {
+        if (!(this.search instanceof BreadthFirstSearch))
+        {
+            this.startSearch("bfs");
+        }
+        this.expand();
+    }
+    // expands the next cell of the current search and records it, returning it or -1
+    int expand()
+    {
+        int cell = this.search.step();
+        if (cell >= 0)
+        {
+            this.trace.add(cell);
+            this.repaint(cell);
+        }
+        return cell;
+    }
+    // starts a new search from the top left corner to the exit; the maze itself is never
+    // written to, so any number of searches can run on it one after another
+    void startSearch(String name)
+    {
+        this.stopReplay();
+        this.search = GridSearch.named(name, this.topology, 0, this.exit);
+        this.marks = this.search.marks;
+        this.trace = new SearchTrace();
+        this.finished = false;
+        this.cellLayer = null;
+    }
+    // puts the player back in the top left corner of the current maze
+    void startManual()
+    {
+        this.stopReplay();
+        this.search = null;
+        this.marks = new byte[this.topology.cells()];
+        this.player = 0;
+        this.marks[0] = GridSearch.ON_PATH;
+        this.trace = new SearchTrace();
+        this.trace.add(0);
+        this.finished = false;
+        this.cellLayer = null;
+    }
+    public void backTrack() // once you hit the end of the maze, show the path
+    {
+        this.search.markPath();
+        if (this.search.found)
+        {
+            for (int cell = this.search.target; cell != this.search.source;
+                 cell = this.search.parents[cell])
+            {
+                this.repaint(cell);
+            }
+            this.repaint(this.search.source);
+        }
+    }
+    // plays a maze from elsewhere, such as a mapped maze file, as it is, and starts over in
+    // manual mode. the Nodes and Edges are built from it only if asked for
+    void load(MazeGrid maze)
+    {
+        this.seed = maze.seed;
+        this.useTopology(maze);
+        this.dropEdges();
+        this.startManual();
+        this.solving = false;
+    }
+    // the path the finished search found, first to last
+    int[] foundPath()
+    {
+        return this.search.path();
+    }
+    // shows the run so far from its first step on fresh marks; the run itself waits meanwhile
+    void startReplay()
+    {
+        this.liveMarks = this.marks;
+        this.marks = new byte[this.topology.cells()];
+        this.replayCounts = new int[this.topology.cells()];
+        this.replayStep = 0;
+        this.cellLayer = null;
+    }
+    // goes back to the run's own marks, and carries on with it
+    void stopReplay()
+    {
+        if (this.replayStep < 0)
+        {
+            return;
+        }
+        this.marks = this.liveMarks;
+        this.liveMarks = null;
+        this.replayCounts = null;
+        this.replayStep = -1;
+        this.cellLayer = null;
+    }
+    // moves the replay to the given step, clamped to the trace. finding the step in the trace
+    // takes at most a checkpoint interval of decoding; then only the cells between the old step
+    // and the new one change, so a frame costs the same however long the run was
+    void seek(int step)
+    {
+        step = Math.max(0, Math.min(step, this.trace.length));
+        this.markReplayHead(false);
+        if (step > this.replayStep)
+        {
+            TraceReader reader = this.trace.reader(this.replayStep);
+            while (reader.step < step)
+            {
+                int cell = reader.next();
+                this.replayCounts[cell]++;
+                this.marks[cell] = GridSearch.EXPANDED;
+                this.repaint(cell);
+            }
+        }
+        else if (step < this.replayStep)
+        {
+            TraceReader reader = this.trace.reader(step);
+            while (reader.step < this.replayStep)
+            {
+                int cell = reader.next();
+                this.replayCounts[cell]--;
+                if (this.replayCounts[cell] == 0)
+                {
+                    this.marks[cell] = 0;
+                    this.repaint(cell);
+                }
+            }
+        }
+        this.replayStep = step;
+        this.markReplayHead(true);
+    }
+    // marks or unmarks where the replay has got to: the found path once it reaches the end of
+    // a run that found one, otherwise the last cell it showed
+    void markReplayHead(boolean on)
+    {
+        int[] head;
+        if (this.replayStep == this.trace.length && this.trace.path.length > 0)
+        {
+            head = this.trace.path;
+        }
+        else if (this.replayStep > 0)
+        {
+            head = new int[] {this.trace.get(this.replayStep - 1)};
+        }
+        else
+        {
+            return;
+        }
+        for (int cell: head)
+        {
+            if (on)
+            {
+                this.marks[cell] = GridSearch.ON_PATH;
+            }
+            else if (this.replayCounts[cell] > 0)
+            {
+                this.marks[cell] = GridSearch.EXPANDED;
+            }
+            else
+            {
+                this.marks[cell] = 0;
+            }
+            this.repaint(cell);
+        }
+    }
+    // the route through the maze between any two cells, first to last, or an empty array if
+    // there is none. while the maze is a tree this needs no search; once walls knocked down
+    // have given it loops, it is a shortest route found by A*
+    int[] route(int from, int to)
+    {
+        if (this.pathIndex == null && !this.loops)
+        {
+            try
+            {
+                this.pathIndex = new TreePathIndex(this.topology);
+            }
+            catch (IllegalArgumentException e)
+            {
+                this.loops = true; // until the walls change again
+            }
+        }
+        if (this.pathIndex == null)
+        {
+            GridSearch search = new AStarSearch(this.topology, from, to);
+            search.run();
+            return search.path();
+        }
+        return this.pathIndex.path(from, to);
+    }
+    // the distance to the exit from every cell, computed once and kept up to date as it moves
+    DistanceField exitField()
+    {
+        if (this.exitField == null)
+        {
+            this.exitField = new DistanceField(this.topology, this.exit);
+        }
+        return this.exitField;
+    }
+    // the direction from the player towards the exit, -1 if on it or there is no way there
+    int hint()
+    {
+        return this.exitField().hint(this.player);
+    }
+    // makes another cell the exit
+    void moveExit(int cell)
+    {
+        this.exit = cell;
+        if (this.exitField != null)
+        {
+            this.exitField.moveExit(cell);
+        }
+        this.heatLayer = null;
+    }
+    // queues a cell whose mark changed to be repainted on the next frame
+    void repaint(int cell)
+    {
+        if (cell < 0 || this.cellLayer == null || this.queued[cell])
+        {
+            return;
+        }
+        this.queued[cell] = true;
+        this.dirty[this.dirtyCount] = cell;
+        this.dirtyCount++;
+    }
+    public void manual(String key)
+    {
+        int dir = Maze.directionOf(key);
+        if (dir < 0)
+        {
+            return;
+        }
+        int next = this.topology.neighbor(this.player, dir);
+        this.marks[this.player] = GridSearch.EXPANDED;
+        this.repaint(this.player);
+        if (next >= 0) // walking into a wall leaves the player where they are
+        {
+            this.player = next;
+            this.trace.add(next);
+        }
+        this.marks[this.player] = GridSearch.ON_PATH;
+        this.repaint(this.player);
+    }
+    // the MazeGrid direction for an arrow key, or -1 for any other key
+    static int directionOf(String key)
+    {
+        if (key.equals("up"))
+        {
+            return MazeGrid.UP;
+        }
+        if (key.equals("right"))
+        {
+            return MazeGrid.RIGHT;
+        }
+        if (key.equals("down"))
+        {
+            return MazeGrid.DOWN;
+        }
+        if (key.equals("left"))
+        {
+            return MazeGrid.LEFT;
+        }
+        return -1;
+    }
+    static String directionName(int dir) // the arrow key for a direction
+    {
+        String[] keys = {"up", "right", "down", "left"};
+        return keys[dir];
+    }
+    int indexOf(Node n) // the MazeGrid cell index of a node
+    {
+        return n.p.y * this.mazeWidth + n.p.x;
+    }
+    Node nodeAt(int cell) // the node for a MazeGrid cell index
+    {
+        return this.nodes().get(cell / this.mazeWidth).get(cell % this.mazeWidth);
+    }
+
+    public WorldImage makeImage() // every frame is timed into metrics
+    {
+        long start = System.nanoTime();
+        WorldImage image;
+        if (this.showHeat)
+        {
+            if (this.heatLayer == null)
+            {
+                this.heatLayer = this.makeHeatLayer();
+            }
+            if (this.wallLayer == null)
+            {
+                this.wallLayer = this.makeWallLayer();
+            }
+            image = this.heatLayer.overlayImages(this.wallLayer);
+        }
+        else if (this.incremental)
+        {
+            image = this.makeIncrementalImage();
+        }
+        else
+        {
+            image = this.makeFullImage();
+        }
+        if (this.swarm != null)
+        {
+            for (int cell: this.swarm.cells)
+            {
+                if (cell >= 0)
+                {
+                    image = image.overlayImages(this.filledCell(cell, Color.ORANGE));
+                }
+            }
+        }
+        if (this.showHint)
+        {
+            image = image.overlayImages(this.hintMarker());
+        }
+        this.metrics.framed(System.nanoTime() - start);
+        return image;
+    }
+    // brings the cached layers up to date and draws them
+    WorldImage makeIncrementalImage()
+    {
+        if (this.cellLayer == null)
+        {
+            this.makeCellLayer();
+        }
+        else
+        {
+            // paint over only the cells that changed, so a frame costs the same however big the maze is
+            for (int i = 0; i < this.dirtyCount; i++)
+            {
+                int c = this.dirty[i];
+                this.queued[c] = false;
+                if (this.drawn[c] != this.marks[c])
+                {
+                    this.drawn[c] = this.marks[c];
+                    this.cellLayer = this.cellLayer.overlayImages(this.cellImage(c, this.marks[c]));
+                }
+            }
+            this.dirtyCount = 0;
+        }
+        if (this.wallLayer == null)
+        {
+            this.wallLayer = this.makeWallLayer();
+        }
+        return this.cellLayer.overlayImages(this.wallLayer);
+    }
+    // draws the whole maze from scratch every frame
+    public WorldImage makeFullImage()
+    {
+        WorldImage maze = this.background();
+        for (int c = 0; c < topology.cells(); c++)
+        {
+            if (this.marks[c] != 0)
+            {
+                maze = maze.overlayImages(this.cellImage(c, this.marks[c]));
+            }
+        }
+        return maze.overlayImages(this.makeWallLayer());
+    }
+    // repaints the background and every marked cell, and starts tracking changes from here
+    void makeCellLayer()
+    {
+        int cells = this.topology.cells();
+        this.cellLayer = this.background();
+        this.drawn = new byte[cells];
+        this.dirty = new int[cells];
+        this.queued = new boolean[cells];
+        this.dirtyCount = 0;
+        for (int c = 0; c < cells; c++)
+        {
+            if (this.marks[c] != 0)
+            {
+                this.drawn[c] = this.marks[c];
+                this.cellLayer = this.cellLayer.overlayImages(this.cellImage(c, this.marks[c]));
+            }
+        }
+    }
+    // the frame around the maze, and the walls and the path if they are shown
+    WorldImage makeWallLayer()
+    {
+        WorldImage layer = new FrameImage(new Posn(0, 0),
+                                          this.mazeWidth * CELL_SIZE * 2,
+                                          this.mazeHeight * CELL_SIZE * 2,
+                                          WALL_COLOR);
+        for (int cell = 0; cell < topology.cells(); cell++)
+        {
+            int x = topology.xOf(cell);
+            int y = topology.yOf(cell);
+            if (this.showWalls)
+            {
+                if (y < this.mazeHeight - 1 && !topology.isOpen(cell, MazeGrid.DOWN))
+                {
+                    layer = layer.overlayImages(Edge.wallBelow(x, y));
+                }
+                if (x < this.mazeWidth - 1 && !topology.isOpen(cell, MazeGrid.RIGHT))
+                {
+                    layer = layer.overlayImages(Edge.wallRightOf(x, y));
+                }
+            }
+            if (this.showPath)
+            {
+                if (topology.isOpen(cell, MazeGrid.DOWN))
+                {
+                    layer = layer.overlayImages(Edge.pathBetween(x, y, x, y + 1));
+                }
+                if (topology.isOpen(cell, MazeGrid.RIGHT))
+                {
+                    layer = layer.overlayImages(Edge.pathBetween(x, y, x + 1, y));
+                }
+            }
+        }
+        return layer;
+    }
+    // every cell shaded by its distance from the exit, in place of the marks
+    WorldImage makeHeatLayer()
+    {
+        DistanceField field = this.exitField();
+        int farthest = Math.max(field.farthest(), 1);
+        Color[] shades = new Color[HEAT_SHADES];
+        for (int i = 0; i < HEAT_SHADES; i++)
+        {
+            int red = 255 * i / (HEAT_SHADES - 1);
+            shades[i] = new Color(red, 255 - red, 0);
+        }
+        WorldImage layer = this.background();
+        for (int c = 0; c < topology.cells(); c++)
+        {
+            int distance = field.distance(c);
+            if (distance >= 0)
+            {
+                Color shade = shades[(int) ((long) distance * (HEAT_SHADES - 1) / farthest)];
+                layer = layer.overlayImages(this.filledCell(c, shade));
+            }
+        }
+        return layer;
+    }
+    // the steps from the player to the exit written above the player, and a line from the
+    // player's cell into the next cell on the way there, if there is one
+    WorldImage hintMarker()
+    {
+        Posn from = this.cellCenter(this.player);
+        int distance = this.exitField().distance(this.player);
+        String text = distance + " to the exit";
+        if (distance < 0)
+        {
+            text = "no way out";
+        }
+        WorldImage marker = new TextImage(new Posn(from.x, from.y - CELL_SIZE), text, 12, Color.MAGENTA);
+        int dir = this.hint();
+        if (dir >= 0)
+        {
+            Posn to = this.cellCenter(MazeGrid.step(this.player, dir, this.mazeWidth));
+            marker = marker.overlayImages(new LineImage(from, to, Color.MAGENTA));
+        }
+        return marker;
+    }
+    Posn cellCenter(int c)
+    {
+        return new Posn(topology.xOf(c) * CELL_SIZE + CELL_SIZE / 2,
+                        topology.yOf(c) * CELL_SIZE + CELL_SIZE / 2);
+    }
+    WorldImage background()
+    {
+        return new RectangleImage(new Posn(0, 0),
+                                  this.mazeWidth * CELL_SIZE,
+                                  this.mazeHeight * CELL_SIZE,
+                                  BACKGROUND_COLOR);
+    }
+    // a cell filled in the colour for its mark
+    WorldImage cellImage(int c, byte mark)
+    {
+        Color color = BACKGROUND_COLOR;
+        if (mark == GridSearch.EXPANDED)
+        {
+            color = Color.CYAN;
+        }
+        if (mark == GridSearch.ON_PATH)
+        {
+            color = Color.BLUE;
+        }
+        return this.filledCell(c, color);
+    }
+    WorldImage filledCell(int c, Color color)
+    {
+        return new RectangleImage(this.cellCenter(c), CELL_SIZE, CELL_SIZE, color);
+    }
+
+    // clicking near a side of a cell knocks down or puts up the wall there
+    public void onMouseClicked(Posn mouse)
+    {
+        int x = mouse.x / CELL_SIZE;
+        int y = mouse.y / CELL_SIZE;
+        if (x < 0 || y < 0 || x >= this.mazeWidth || y >= this.mazeHeight)
+        {
+            return;
+        }
+        int dx = mouse.x - x * CELL_SIZE - CELL_SIZE / 2;
+        int dy = mouse.y - y * CELL_SIZE - CELL_SIZE / 2;
+        int dir;
+        if (Math.abs(dx) > Math.abs(dy))
+        {
+            dir = MazeGrid.RIGHT;
+            if (dx < 0)
+            {
+                dir = MazeGrid.LEFT;
+            }
+        }
+        else
+        {
+            dir = MazeGrid.DOWN;
+            if (dy < 0)
+            {
+                dir = MazeGrid.UP;
+            }
+        }
+        int cell = this.topology.index(x, y);
+        if (!this.openWall(cell, dir))
+        {
+            this.closeWall(cell, dir);
+        }
+    }
+
+    public void onKeyEvent(String ke)
+    {
+        if (Maze.directionOf(ke) >= 0 && this.replayStep < 0) // no walking during a replay
+        {
+            this.manual(ke);
+        }
+        if (ke.equals("w"))
+        {
+            this.showWalls = !this.showWalls;
+            this.wallLayer = null;
+        }
+        if (ke.equals("q"))
+        {
+            this.showPath = !this.showPath;
+            this.wallLayer = null;
+        }
+        if (ke.equals("s")) // save the maze
+        {
+            try
+            {
+                MazeFile.save(this.topology, Paths.get(SAVE_FILE));
+            }
+            catch (IOException e)
+            {
+                System.err.println("could not save the maze: " + e.getMessage());
+            }
+        }
+        if (ke.equals("o")) // write a picture of the maze as it is now
+        {
+            try
+            {
+                PngExporter exporter = new PngExporter(this.topology, this.marks, CELL_SIZE,
+                                                       Runtime.getRuntime().availableProcessors());
+                exporter.passages = this.showPath;
+                exporter.write(Paths.get(PICTURE_FILE));
+            }
+            catch (IOException e)
+            {
+                System.err.println("could not write the picture: " + e.getMessage());
+            }
+        }
+        if (ke.equals("l")) // load the saved maze, if it is the same size as this one
+        {
+            try
+            {
+                MazeGrid saved = MazeFile.load(Paths.get(SAVE_FILE));
+                if (saved.width == this.mazeWidth && saved.height == this.mazeHeight)
+                {
+                    this.load(saved);
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("could not load the maze: " + e.getMessage());
+            }
+        }
+        if (ke.equals("+") || ke.equals("=")) // twice as many steps each frame
+        {
+            this.stepsPerTick = Math.min(this.stepsPerTick * 2, MAX_STEPS_PER_TICK);
+        }
+        if (ke.equals("-")) // half as many
+        {
+            this.stepsPerTick = Math.max(this.stepsPerTick / 2, 1);
+        }
+        if (ke.equals("t")) // switch between a number of steps and a slice of time each frame
+        {
+            if (this.tickMillis > 0)
+            {
+                this.tickMillis = 0;
+            }
+            else
+            {
+                this.tickMillis = TICK_MILLIS;
+            }
+        }
+        if (ke.equals("h")) // show or hide the distance to the exit
+        {
+            this.showHeat = !this.showHeat;
+        }
+        if (ke.equals("n")) // show or hide which way the exit is from the player
+        {
+            this.showHint = !this.showHint;
+        }
+        if (ke.equals("g")) // let a swarm of bots loose on the maze, or take it away
+        {
+            if (this.swarm == null)
+            {
+                this.swarm = new AgentSwarm(ForkJoinPool.commonPool(), this.topology.cells(),
+                                            Math.min(SWARM_SIZE, this.topology.cells() - 1),
+                                            this.seeds.nextLong());
+            }
+            else
+            {
+                this.swarm = null;
+            }
+        }
+        if (ke.equals("p")) // watch the run so far again from the start, or stop watching
+        {
+            if (this.replayStep < 0)
+            {
+                this.startReplay();
+            }
+            else
+            {
+                this.stopReplay();
+            }
+        }
+        if ((ke.equals(",") || ke.equals(".")) && this.replayStep >= 0) // skip a tenth of it
+        {
+            int tenth = Math.max(this.trace.length / 10, 1);
+            if (ke.equals(","))
+            {
+                tenth = -tenth;
+            }
+            this.seek(this.replayStep + tenth);
+        }
+        if (ke.equals("x")) // make the player's cell the exit
+        {
+            this.moveExit(this.player);
+        }
+        if (ke.equals("i")) // switch between incremental and full redraws
+        {
+            this.incremental = !this.incremental;
+            this.cellLayer = null;
+        }
+        if (ke.equals("m") || Maze.searchFor(ke) != null) // lower case builds a new maze
+        {
+            this.seed = this.seeds.nextLong();
+            this.generate();
+        }
+        if (ke.equalsIgnoreCase("m")) // restart with manual control
+        {
+            this.startManual();
+            this.solving = false;
+        }
+        String solver = Maze.searchFor(ke.toLowerCase());
+        if (solver != null) // restart with that search
+        {
+            this.startSearch(solver);
+            this.solving = true;
+        }
+
+    }
+    // the search a key starts: b, d, a (A*), e (from both ends), j (junctions), c (cheapest by
+    // passage weight) or r (repairs itself when walls change), or null for any other key
+    static String searchFor(String key)
+    {
+        if (key.equals("b"))
+        {
+            return "bfs";
+        }
+        if (key.equals("d"))
+        {
+            return "dfs";
+        }
+        if (key.equals("a"))
+        {
+            return "astar";
+        }
+        if (key.equals("e"))
+        {
+            return "bidirectional";
+        }
+        if (key.equals("j"))
+        {
+            return "junction";
+        }
+        if (key.equals("c"))
+        {
+            return "dijkstra";
+        }
+        if (key.equals("r"))
+        {
+            return "lifelong";
+        }
+        return null;
+    }
+    public void onTick()
+    {
+        if (this.solving && this.search.found)
+        {
+            this.finished = true;
+            this.backTrack();
+            this.solving = false;
+            this.metrics.searched(this.search);
+            this.trace.finish(this.foundPath());
+        }
+        if (this.replayStep >= 0)
+        {
+            this.seek(this.replayStep + this.stepsPerTick);
+        }
+        else if (this.solving)
+        {
+            this.advance();
+        }
+        if (this.swarm != null)
+        {
+            this.swarm.tick(this.exitField());
+        }
+    }
+    // expands stepsPerTick cells of the search, or as many as fit in tickMillis if that is set,
+    // stopping early once the target is found. returns how many cells it expanded
+    int advance()
+    {
+        long deadline = System.nanoTime() + this.tickMillis * 1000000L;
+        int steps = 0;
+        while (!this.search.found)
+        {
+            if (this.expand() < 0)
+            {
+                break;
+            }
+            steps++;
+            if (this.tickMillis > 0)
+            {
+                // reading the clock costs about as much as a step, so only look every so often
+                if ((steps & 63) == 0 && System.nanoTime() >= deadline)
+                {
+                    break;
+                }
+            }
+            else if (steps >= this.stepsPerTick)
+            {
+                break;
+            }
+        }
+        return steps;
+    }
+    public WorldEnd worldEnd()
+    {
+        if (this.finished)
+        {
+            this.backTrack();
+            return new WorldEnd(true, new OverlayImages(this.makeImage(),
+                    (new TextImage(new Posn(100, 100),
+                            "You Solved the Maze!", 36,
+                            Color.RED))));
+        }
+        else
+        {
+            return new WorldEnd(false, this.makeImage());
+        }
+    }
+
+}
+//counters and timers for one Maze: generation phases, union/find depth, the last finished
+//search and frame times. each update is a few field writes once per phase, search or frame,
+//so they are always on. the same numbers go to JFR as events while a recording is running,
+//e.g. with java -XX:StartFlightRecording=filename=maze.jfr
+class MazeMetrics
+{
+    int generations; // mazes built
+    long generateNanos; // how long building the last maze took, all phases together
+    long weightsNanos; // drawing its edge weights
+    long orderNanos; // putting the edges in weight order
+    long unionNanos; // the union/find pass that cut the spanning tree
+    long edgesNanos; // building its Nodes and Edges, 0 until something asks for them
+    long finds; // DisjointSet finds while building the last maze
+    long findSteps; // parent links those finds followed
+    int searches; // searches run to the end
+    String search; // the name of the last of them
+    int expanded; // cells the last search expanded
+    int peakFrontier; // the largest its frontier got
+    int pathLength; // the cells on the path it found, 0 if none
+    long frames; // calls to makeImage
+    long frameNanos; // total time in makeImage
+    long maxFrameNanos; // the slowest frame
+
+    // records a maze build, taking the phases and finds from the generator that built it
+    void generated(Maze maze, KruskalGenerator generator, long nanos)
+    {
+        this.generations++;
+        this.generateNanos = nanos;
+        this.weightsNanos = generator.weightsNanos;
+        this.orderNanos = generator.orderNanos;
+        this.unionNanos = generator.unionNanos;
+        this.edgesNanos = 0;
+        this.finds = generator.forest.finds;
+        this.findSteps = generator.forest.findSteps;
+        this.commitGeneration(maze);
+    }
+    // records the Nodes and Edges being built for the maze. the Generation event goes to JFR
+    // again, now with the time the split into cuts and leftovers took
+    void builtEdges(Maze maze, long nanos)
+    {
+        this.edgesNanos = nanos;
+        this.commitGeneration(maze);
+    }
+    void commitGeneration(Maze maze)
+    {
+        GenerationEvent event = new GenerationEvent();
+        if (event.shouldCommit())
+        {
+            event.width = maze.mazeWidth;
+            event.height = maze.mazeHeight;
+            event.seed = maze.seed;
+            event.generateNanos = this.generateNanos;
+            event.weightsNanos = this.weightsNanos;
+            event.orderNanos = this.orderNanos;
+            event.unionNanos = this.unionNanos;
+            event.edgesNanos = this.edgesNanos;
+            event.finds = this.finds;
+            event.findSteps = this.findSteps;
+            event.commit();
+        }
+    }
+    // records a search that has found its target or run out of cells
+    void searched(GridSearch search)
+    {
+        this.searches++;
+        this.search = search.name();
+        this.expanded = search.expanded;
+        this.peakFrontier = search.peakFrontier;
+        this.pathLength = search.pathLength();
+        SearchEvent event = new SearchEvent();
+        if (event.shouldCommit())
+        {
+            event.set(search);
+            event.commit();
+        }
+    }
+    // records the time one makeImage took
+    void framed(long nanos)
+    {
+        this.frames++;
+        this.frameNanos += nanos;
+        if (nanos > this.maxFrameNanos)
+        {
+            this.maxFrameNanos = nanos;
+        }
+        FrameEvent event = new FrameEvent();
+        if (event.shouldCommit())
+        {
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+    // parent links followed per find: close to 1 while union by rank and halving do their job
+    double averageFindDepth()
+    {
+        if (this.finds == 0)
+        {
+            return 0;
+        }
+        return this.findSteps / (double) this.finds;
+    }
+    double averageFrameMillis()
+    {
+        if (this.frames == 0)
+        {
+            return 0;
+        }
+        return this.frameNanos / 1e6 / this.frames;
+    }
+    // every metric by name, in a fixed order, for logging or exporting
+    LinkedHashMap<String, Number> values()
+    {
+        LinkedHashMap<String, Number> values = new LinkedHashMap<String, Number>();
+        values.put("generations", this.generations);
+        values.put("generate.ms", this.generateNanos / 1e6);
+        values.put("generate.weights.ms", this.weightsNanos / 1e6);
+        values.put("generate.order.ms", this.orderNanos / 1e6);
+        values.put("generate.union.ms", this.unionNanos / 1e6);
+        values.put("edges.ms", this.edgesNanos / 1e6);
+        values.put("find.calls", this.finds);
+        values.put("find.depth", this.averageFindDepth());
+        values.put("searches", this.searches);
+        values.put("search.expanded", this.expanded);
+        values.put("search.peakFrontier", this.peakFrontier);
+        values.put("search.pathLength", this.pathLength);
+        values.put("frames", this.frames);
+        values.put("frame.ms", this.averageFrameMillis());
+        values.put("frame.maxMs", this.maxFrameNanos / 1e6);
+        return values;
+    }
+    public String toString()
+    {
+        return this.values().toString();
+    }
+}
+
+//JFR event for building a maze. it is committed again, with edgesNanos, once the maze's Nodes
+//and Edges are built
+@Name("mazeworld.Generation")
+@Label("Maze Generation")
+@Category("MazeWorld")
+class GenerationEvent extends Event
+{
+    @Label("Width")
+    int width;
+    @Label("Height")
+    int height;
+    @Label("Seed")
+    long seed;
+    @Label("Generate")
+    @Timespan
+    long generateNanos;
+    @Label("Edge Weights")
+    @Timespan
+    long weightsNanos;
+    @Label("Weight Order")
+    @Timespan
+    long orderNanos;
+    @Label("Union Pass")
+    @Timespan
+    long unionNanos;
+    @Label("Nodes and Edges")
+    @Timespan
+    long edgesNanos;
+    @Label("Finds")
+    long finds;
+    @Label("Find Steps")
+    long findSteps;
+}
+
+//JFR event for a finished search; its duration is only meaningful for headless runs, since on
+//screen a search is spread over many frames
+@Name("mazeworld.Search")
+@Label("Maze Search")
+@Category("MazeWorld")
+class SearchEvent extends Event
+{
+    @Label("Search")
+    String search;
+    @Label("Cells")
+    int cells;
+    @Label("Expanded")
+    int expanded;
+    @Label("Peak Frontier")
+    int peakFrontier;
+    @Label("Path Length")
+    int pathLength;
+    @Label("Found")
+    boolean found;
+
+    void set(GridSearch search)
+    {
+        this.search = search.name();
+        this.cells = search.maze.cells();
+        this.expanded = search.expanded;
+        this.peakFrontier = search.peakFrontier;
+        this.pathLength = search.pathLength();
+        this.found = search.found;
+    }
+}
+
+//JFR event for one call to makeImage
+@Name("mazeworld.Frame")
+@Label("Maze Frame")
+@Category("MazeWorld")
+class FrameEvent extends Event
+{
+    @Label("Time")
+    @Timespan
+    long nanos;
+}
+
+//one run of a search over a MazeGrid. the maze is only ever read, and everything the run
+//writes - marks, parents and the frontier - lives here, so a maze can be solved any number of
+//times by any of the searches. predecessors are kept in an int array and the subclasses keep
+//their frontiers in primitive arrays, so expanding a cell allocates nothing
+abstract class GridSearch
+{
+    static final byte EXPANDED = 1; // marks a cell the search has expanded
+    static final byte ON_PATH = 2; // marks a cell on the path from the source to the target
+    // every search GridSearch.named can build
+    static final String[] NAMES = {"dfs", "bfs", "astar", "bidirectional", "junction",
+                                   "dijkstra", "lifelong"};
+
+    final MazeGrid maze;
+    final int source;
+    final int target;
+    final int[] parents; // the cell each cell was reached from, -1 if not reached yet
+    final byte[] marks;
+    int expanded; // how many cells have been expanded
+    int peakFrontier; // the most cells the frontier held, counted as each cell leaves it
+    boolean found; // has the target been reached
+
+    GridSearch(MazeGrid maze, int source, int target)
+    {
+        this.maze = maze;
+        this.source = source;
+        this.target = target;
+        this.parents = new int[maze.cells()];
+        this.marks = new byte[maze.cells()];
+    }
+
+    // a new search of the given kind on the maze, one of NAMES
+    static GridSearch named(String name, MazeGrid maze, int source, int target)
+    {
+        if (name.equals("dfs"))
+        {
+            return new DepthFirstSearch(maze, source, target);
+        }
+        if (name.equals("bfs"))
+        {
+            return new BreadthFirstSearch(maze, source, target);
+        }
+        if (name.equals("astar"))
+        {
+            return new AStarSearch(maze, source, target);
+        }
+        if (name.equals("bidirectional"))
+        {
+            return new BidirectionalSearch(maze, source, target);
+        }
+        if (name.equals("dijkstra"))
+        {
+            return new DijkstraSearch(maze, source, target, true);
+        }
+        if (name.equals("lifelong"))
+        {
+            return new LifelongSearch(maze, source, target);
+        }
+        if (name.equals("junction"))
+        {
+            return new JunctionSearch(new JunctionGraph(maze, source, target), source, target);
+        }
+        throw new IllegalArgumentException("unknown search: " + name);
+    }
+    // runs the named search from the top left corner to the bottom right one, for headless use;
+    // the finished search has the path and how many cells it expanded
+    static GridSearch solve(String name, MazeGrid maze)
+    {
+        GridSearch search = GridSearch.named(name, maze, 0, maze.cells() - 1);
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        search.run();
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.set(search);
+            event.commit();
+        }
+        return search;
+    }
+
+    abstract String name();
+    // puts the source in an empty frontier
+    abstract void begin();
+    // expands the next cell in the frontier and returns it, or -1 if the frontier is empty
+    abstract int step();
+    // the number of cells waiting in the frontier
+    abstract int frontier();
+
+    // clears the run so the search starts over, reusing its arrays
+    void reset()
+    {
+        Arrays.fill(this.parents, -1);
+        Arrays.fill(this.marks, (byte) 0);
+        this.expanded = 0;
+        this.peakFrontier = 0;
+        this.parents[this.source] = this.source;
+        this.found = this.source == this.target;
+        this.begin();
+    }
+    // records the expansion of a cell
+    void expand(int cell)
+    {
+        this.marks[cell] = EXPANDED;
+        this.expanded++;
+        int waiting = this.frontier() + 1; // the cell itself was in the frontier until now
+        if (waiting > this.peakFrontier)
+        {
+            this.peakFrontier = waiting;
+        }
+    }
+    // records that next was reached from current; false if it had already been reached
+    boolean reach(int current, int next)
+    {
+        if (this.parents[next] >= 0)
+        {
+            return false;
+        }
+        this.parents[next] = current;
+        if (next == this.target)
+        {
+            this.found = true;
+        }
+        return true;
+    }
+    // expands cells until the target is reached or nothing is left; returns whether it was found
+    boolean run()
+    {
+        while (!this.found && this.step() >= 0)
+        {
+            // keep expanding
+        }
+        return this.found;
+    }
+    // the number of cells on the path from the source to the target, or 0 if not found
+    int pathLength()
+    {
+        if (!this.found)
+        {
+            return 0;
+        }
+        int length = 1;
+        for (int cell = this.target; cell != this.source; cell = this.parents[cell])
+        {
+            length++;
+        }
+        return length;
+    }
+    // the cells on the path from the source to the target, both included, or an empty array if
+    // the target has not been found
+    int[] path()
+    {
+        int[] path = new int[this.pathLength()];
+        int cell = this.target;
+        for (int i = path.length - 1; i >= 0; i--)
+        {
+            path[i] = cell;
+            cell = this.parents[cell];
+        }
+        return path;
+    }
+    // marks every cell on the path from the target back to the source
+    void markPath()
+    {
+        if (!this.found)
+        {
+            return;
+        }
+        for (int cell = this.target; cell != this.source; cell = this.parents[cell])
+        {
+            this.marks[cell] = ON_PATH;
+        }
+        this.marks[this.source] = ON_PATH;
+    }
+}
+
+//depth first search with the frontier kept as an int stack
+class DepthFirstSearch extends GridSearch
+{
+    final int[] stack; // every cell is pushed at most once, so this never grows
+    int top;
+
+    DepthFirstSearch(MazeGrid maze, int source, int target)
+    {
+        super(maze, source, target);
+        this.stack = new int[maze.cells()];
+        this.reset();
+    }
+
+    String name()
+    {
+        return "dfs";
+    }
+    int frontier()
+    {
+        return this.top;
+    }
+    void begin()
+    {
+        this.top = 0;
+        this.stack[this.top++] = this.source;
+    }
+    int step()
+    {
+        if (this.top == 0)
+        {
+            return -1;
+        }
+        this.top--;
+        int current = this.stack[this.top];
+        this.expand(current);
+        // the same neighbour order the Node based searches used
+        this.push(current, MazeGrid.UP);
+        this.push(current, MazeGrid.DOWN);
+        this.push(current, MazeGrid.LEFT);
+        this.push(current, MazeGrid.RIGHT);
+        return current;
+    }
+    void push(int current, int dir)
+    {
+        if (this.maze.isOpen(current, dir))
+        {
+            int next = MazeGrid.step(current, dir, this.maze.width);
+            if (this.reach(current, next))
+            {
+                this.stack[this.top++] = next;
+            }
+        }
+    }
+}
+
+//breadth first search with the frontier kept as an int queue
+class BreadthFirstSearch extends GridSearch
+{
+    final int[] queue; // every cell is enqueued at most once, so this never wraps
+    int head;
+    int tail;
+
+    BreadthFirstSearch(MazeGrid maze, int source, int target)
+    {
+        super(maze, source, target);
+        this.queue = new int[maze.cells()];
+        this.reset();
+    }
+
+    String name()
+    {
+        return "bfs";
+    }
+    int frontier()
+    {
+        return this.tail - this.head;
+    }
+    void begin()
+    {
+        this.head = 0;
+        this.tail = 0;
+        this.queue[this.tail++] = this.source;
+    }
+    int step()
+    {
+        if (this.head == this.tail)
+        {
+            return -1;
+        }
+        int current = this.queue[this.head++];
+        this.expand(current);
+        this.enqueue(current, MazeGrid.UP);
+        this.enqueue(current, MazeGrid.DOWN);
+        this.enqueue(current, MazeGrid.LEFT);
+        this.enqueue(current, MazeGrid.RIGHT);
+        return current;
+    }
+    void enqueue(int current, int dir)
+    {
+        if (this.maze.isOpen(current, dir))
+        {
+            int next = MazeGrid.step(current, dir, this.maze.width);
+            if (this.reach(current, next))
+            {
+                this.queue[this.tail++] = next;
+            }
+        }
+    }
+}
+
+//A* with the manhattan distance to the target as its heuristic. the open set is an IntMinHeap
+//keyed by the estimated length through each cell, ties going to the cell nearer the target,
+//so on a maze it expands little more than the path itself when the path heads for the exit.
+//the heuristic never overestimates and drops by at most one a step, so a cell's distance is
+//final once it is expanded and the target is found when it comes off the heap
+class AStarSearch extends GridSearch
+{
+    final int[] distances; // steps from the source to each reached cell
+    final IntMinHeap open;
+
+    AStarSearch(MazeGrid maze, int source, int target)
+    {
+        super(maze, source, target);
+        this.distances = new int[maze.cells()];
+        this.open = new IntMinHeap(maze.cells());
+        this.reset();
+    }
+
+    String name()
+    {
+        return "astar";
+    }
+    int frontier()
+    {
+        return this.open.size();
+    }
+    void begin()
+    {
+        this.open.clear();
+        this.distances[this.source] = 0;
+        this.open.push(this.source, this.key(this.source, 0));
+    }
+    int step()
+    {
+        if (this.found || this.open.isEmpty())
+        {
+            return -1;
+        }
+        int current = this.open.pop();
+        this.expand(current);
+        if (current == this.target)
+        {
+            this.found = true;
+            return current;
+        }
+        this.relax(current, MazeGrid.UP);
+        this.relax(current, MazeGrid.DOWN);
+        this.relax(current, MazeGrid.LEFT);
+        this.relax(current, MazeGrid.RIGHT);
+        return current;
+    }
+    void relax(int current, int dir)
+    {
+        if (this.maze.isOpen(current, dir))
+        {
+            int next = MazeGrid.step(current, dir, this.maze.width);
+            int distance = this.distances[current] + 1;
+            if (this.parents[next] < 0 || distance < this.distances[next])
+            {
+                this.parents[next] = current;
+                this.distances[next] = distance;
+                this.open.push(next, this.key(next, distance));
+            }
+        }
+    }
+    // the heap key of a cell: the estimated path length through it, then its estimate
+    long key(int cell, int distance)
+    {
+        long estimate = this.estimate(cell);
+        return ((distance + estimate) << 32) | estimate;
+    }
+    // the manhattan distance from a cell to the target, or 0 if there is no target
+    int estimate(int cell)
+    {
+        if (this.target < 0)
+        {
+            return 0;
+        }
+        int width = this.maze.width;
+        return Math.abs(cell % width - this.target % width)
+            + Math.abs(cell / width - this.target / width);
+    }
+}
+
+//breadth first searches from both the source and the target at once, always growing the
+//smaller frontier, until they reach a common cell. on a maze with the exit far from the
+//entrance each side covers about half the distance. when they meet, the target's side of the
+//path is threaded into parents, so pathLength and markPath work as for any other search
+class BidirectionalSearch extends GridSearch
+{
+    final int[] forward; // the queue from the source
+    final int[] backward; // the queue from the target
+    final int[] children; // the cell each cell was reached from on the target's side, -1 if not
+    int forwardHead;
+    int forwardTail;
+    int backwardHead;
+    int backwardTail;
+
+    BidirectionalSearch(MazeGrid maze, int source, int target)
+    {
+        super(maze, source, target);
+        this.forward = new int[maze.cells()];
+        this.backward = new int[maze.cells()];
+        this.children = new int[maze.cells()];
+        this.reset();
+    }
+
+    String name()
+    {
+        return "bidirectional";
+    }
+    int frontier()
+    {
+        return this.forwardTail - this.forwardHead + this.backwardTail - this.backwardHead;
+    }
+    void begin()
+    {
+        Arrays.fill(this.children, -1);
+        this.forwardHead = 0;
+        this.forwardTail = 0;
+        this.backwardHead = 0;
+        this.backwardTail = 0;
+        this.forward[this.forwardTail++] = this.source;
+        if (this.target >= 0)
+        {
+            this.children[this.target] = this.target;
+            this.backward[this.backwardTail++] = this.target;
+        }
+    }
+    int step()
+    {
+        int forwardSize = this.forwardTail - this.forwardHead;
+        int backwardSize = this.backwardTail - this.backwardHead;
+        if (this.found || forwardSize + backwardSize == 0)
+        {
+            return -1;
+        }
+        if (backwardSize == 0 || (forwardSize > 0 && forwardSize <= backwardSize))
+        {
+            int current = this.forward[this.forwardHead++];
+            this.expand(current);
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT && !this.found; dir++)
+            {
+                int next = this.maze.neighbor(current, dir);
+                if (next >= 0 && this.parents[next] < 0)
+                {
+                    this.parents[next] = current;
+                    if (this.children[next] >= 0)
+                    {
+                        this.meet(next);
+                    }
+                    this.forward[this.forwardTail++] = next;
+                }
+            }
+            return current;
+        }
+        int current = this.backward[this.backwardHead++];
+        this.expand(current);
+        for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT && !this.found; dir++)
+        {
+            int next = this.maze.neighbor(current, dir);
+            if (next >= 0 && this.children[next] < 0)
+            {
+                this.children[next] = current;
+                if (this.parents[next] >= 0)
+                {
+                    this.meet(next);
+                }
+                this.backward[this.backwardTail++] = next;
+            }
+        }
+        return current;
+    }
+    // both sides have reached cell, so points parents along the target's side of the path
+    void meet(int cell)
+    {
+        for (int current = cell; current != this.target; current = this.children[current])
+        {
+            this.parents[this.children[current]] = current;
+        }
+        this.found = true;
+    }
+}
+
+//the distance from every cell to the exit, from one breadth first search out of the exit, with
+//the next cell towards the exit for each cell. asking how far or which way is then an array
+//lookup. when the exit moves to another cell of a perfect maze the field is relabelled rather
+//than searched again: every cell's way to the new exit joins the way to the old one at some
+//cell of the path between the two exits, j steps from the old exit, so its distance changes
+//by k - 2j where k is the length of that path. only the path's pointers are turned around,
+//and each other cell takes its change from the cell it points to, so the relabel is a pass
+//over the arrays with no walls looked at. on a maze with loops it searches again
+class DistanceField
+{
+    static final int UNSET = Integer.MIN_VALUE;
+    final MazeGrid maze;
+    final int[] distances; // steps from each cell to the exit, -1 if it cannot get there
+    final int[] toward; // the next cell on the way to the exit, the exit itself for the exit
+    final int[] shifts; // scratch for moveExit: how much each cell's distance changes
+    final int[] climb; // scratch for moveExit: cells waiting for their shift
+    int exit;
+    boolean tree; // is the exit's part of the maze free of loops
+    int farthest; // the largest distance
+
+    DistanceField(MazeGrid maze, int exit)
+    {
+        this.maze = maze;
+        this.distances = new int[maze.cells()];
+        this.toward = new int[maze.cells()];
+        this.shifts = new int[maze.cells()];
+        this.climb = new int[maze.cells()];
+        this.exit = exit;
+        this.compute();
+    }
+
+    // the breadth first search out of the exit, using climb as its queue
+    void compute()
+    {
+        Arrays.fill(this.distances, -1);
+        int[] queue = this.climb;
+        int head = 0;
+        int tail = 0;
+        long ends = 0; // passage ends seen, two for every passage
+        queue[tail++] = this.exit;
+        this.distances[this.exit] = 0;
+        this.toward[this.exit] = this.exit;
+        while (head < tail)
+        {
+            int current = queue[head++];
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                int next = this.maze.neighbor(current, dir);
+                if (next >= 0)
+                {
+                    ends++;
+                    if (this.distances[next] < 0)
+                    {
+                        this.distances[next] = this.distances[current] + 1;
+                        this.toward[next] = current;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        this.tree = ends / 2 == tail - 1;
+        this.farthest = this.distances[queue[tail - 1]];
+    }
+    int distance(int cell)
+    {
+        return this.distances[cell];
+    }
+    // the direction from the cell towards the exit, or -1 at the exit or with no way there
+    int hint(int cell)
+    {
+        if (cell == this.exit || this.distances[cell] < 0)
+        {
+            return -1;
+        }
+        for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+        {
+            if (this.maze.neighbor(cell, dir) == this.toward[cell])
+            {
+                return dir;
+            }
+        }
+        return -1;
+    }
+    int farthest()
+    {
+        return this.farthest;
+    }
+    // makes another cell the exit and brings every distance up to date
+    void moveExit(int exit)
+    {
+        if (exit == this.exit)
+        {
+            return;
+        }
+        int length = this.distances[exit];
+        if (!this.tree || length < 0)
+        {
+            this.exit = exit;
+            this.compute();
+            return;
+        }
+        // the path from the new exit back to the old one; j counts from the old exit
+        Arrays.fill(this.shifts, UNSET);
+        int cell = exit;
+        for (int j = length; j >= 0; j--)
+        {
+            this.shifts[cell] = length - 2 * j;
+            cell = this.toward[cell];
+        }
+        // everything else shifts like the path cell its way to the exit reaches first
+        for (int start = 0; start < this.distances.length; start++)
+        {
+            if (this.distances[start] < 0 || this.shifts[start] != UNSET)
+            {
+                continue;
+            }
+            int waiting = 0;
+            cell = start;
+            while (this.shifts[cell] == UNSET)
+            {
+                this.climb[waiting++] = cell;
+                cell = this.toward[cell];
+            }
+            int shift = this.shifts[cell];
+            while (waiting > 0)
+            {
+                this.shifts[this.climb[--waiting]] = shift;
+            }
+        }
+        int farthest = 0;
+        for (cell = 0; cell < this.distances.length; cell++)
+        {
+            if (this.distances[cell] >= 0)
+            {
+                this.distances[cell] += this.shifts[cell];
+                farthest = Math.max(farthest, this.distances[cell]);
+            }
+        }
+        // turn the path around so it leads to the new exit
+        int previous = exit;
+        cell = this.toward[exit];
+        this.toward[exit] = exit;
+        for (int j = 0; j < length; j++)
+        {
+            int next = this.toward[cell];
+            this.toward[cell] = previous;
+            previous = cell;
+            cell = next;
+        }
+        this.exit = exit;
+        this.farthest = farthest;
+    }
+}
+
+//many agents walking one maze towards its exit at the same time, such as bots or players.
+//the state of agent a is spread across arrays, cells[a] and so on, rather than kept in an
+//object per agent, so a tick is a few passes over flat arrays. each tick the agents are cut
+//into ranges that a ForkJoinPool moves in parallel; the maze and the DistanceField are only
+//read. who stands where is one AtomicIntegerArray: an agent claims the cell it wants with a
+//compare and set and only then lets go of its own, so two agents never share a cell and no
+//lock is taken. an agent that loses the race waits for the next tick. which of two agents
+//wins depends on thread timing, so with more than one thread a run is not repeatable.
+//agents reaching the exit leave the maze and come back at a free cell picked from the seed
+class AgentSwarm
+{
+    static final int AGENTS_PER_TASK = 2048; // agents a single task moves before it stops splitting
+    static final int WANDER = 32; // out of 256, how often an agent steps a random way instead
+    static final int SPAWN_TRIES = 4; // free cells an agent looks for before waiting a tick
+
+    final ForkJoinPool pool;
+    final long seed;
+    final int count;
+    final int[] cells; // where each agent is, -1 while it waits to come back into the maze
+    final int[] moves; // steps each agent has taken
+    final int[] waits; // ticks each agent has spent blocked by another
+    final AtomicIntegerArray occupants; // the agent on each cell plus one, 0 if it is free
+    int wander = WANDER;
+    long ticks;
+    long steps; // agent updates, one for each agent in the maze each tick
+    long moved;
+    long blocked;
+    long arrivals;
+
+    AgentSwarm(ForkJoinPool pool, int cells, int count, long seed)
+    {
+        if (count < 0 || count >= cells)
+        {
+            throw new IllegalArgumentException("a swarm needs fewer agents than the maze has cells");
+        }
+        this.pool = pool;
+        this.seed = seed;
+        this.count = count;
+        this.cells = new int[count];
+        this.moves = new int[count];
+        this.waits = new int[count];
+        this.occupants = new AtomicIntegerArray(cells);
+        Arrays.fill(this.cells, -1);
+    }
+
+    // moves every agent one step through the field's maze towards the field's exit
+    void tick(DistanceField field)
+    {
+        AgentTask task = new AgentTask(this, field, 0, this.count);
+        this.pool.invoke(task);
+        this.ticks++;
+        this.steps += task.steps;
+        this.moved += task.moved;
+        this.blocked += task.blocked;
+        this.arrivals += task.arrivals;
+    }
+    // how many agents are in the maze
+    int active()
+    {
+        int active = 0;
+        for (int cell: this.cells)
+        {
+            if (cell >= 0)
+            {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    // moves one agent and returns what happened to it, one of the constants in AgentTask
+    int update(int agent, DistanceField field)
+    {
+        int cell = this.cells[agent];
+        if (cell < 0)
+        {
+            return this.spawn(agent, field.exit);
+        }
+        if (cell == field.exit) // the exit moved onto this agent
+        {
+            this.leave(agent, cell);
+            return AgentTask.ARRIVED;
+        }
+        long coin = EdgeWeights.hash(this.seed, agent, (int) this.ticks, 4);
+        int next;
+        if (field.distances[cell] > 0 && (coin & 0xff) >= this.wander)
+        {
+            next = field.toward[cell];
+        }
+        else
+        {
+            next = field.maze.neighbor(cell, (int) (coin >>> 62));
+        }
+        if (next < 0)
+        {
+            return AgentTask.STAYED;
+        }
+        if (next == field.exit)
+        {
+            this.moves[agent]++;
+            this.leave(agent, cell);
+            return AgentTask.ARRIVED;
+        }
+        if (!this.occupants.compareAndSet(next, 0, agent + 1))
+        {
+            this.waits[agent]++;
+            return AgentTask.BLOCKED;
+        }
+        this.occupants.set(cell, 0);
+        this.cells[agent] = next;
+        this.moves[agent]++;
+        return AgentTask.MOVED;
+    }
+    void leave(int agent, int cell)
+    {
+        this.occupants.set(cell, 0);
+        this.cells[agent] = -1;
+    }
+    // puts an agent that is out of the maze back on a free cell other than the exit
+    int spawn(int agent, int exit)
+    {
+        int size = this.occupants.length();
+        for (int i = 0; i < SPAWN_TRIES; i++)
+        {
+            long h = EdgeWeights.hash(this.seed, agent, (int) this.ticks, i + 5);
+            int cell = (int) (((h >>> 32) * size) >>> 32);
+            if (cell != exit && this.occupants.compareAndSet(cell, 0, agent + 1))
+            {
+                this.cells[agent] = cell;
+                return AgentTask.SPAWNED;
+            }
+        }
+        return AgentTask.OUTSIDE;
+    }
+}
+
+//moves a range of a swarm's agents for one tick, splitting the range in half until it is
+//small, and adds up what happened to them
+class AgentTask extends RecursiveAction
+{
+    static final int STAYED = 0; // walked into a wall
+    static final int MOVED = 1;
+    static final int BLOCKED = 2; // another agent had the cell
+    static final int ARRIVED = 3;
+    static final int SPAWNED = 4; // came back into the maze
+    static final int OUTSIDE = 5; // found no free cell to come back on
+    // ForkJoinTasks are Serializable, but a task only ever runs in the pool that was handed it
+    private static final long serialVersionUID = 1L;
+
+    final transient AgentSwarm swarm;
+    final transient DistanceField field;
+    final int from; // the first agent
+    final int to; // one past the last agent
+    long steps;
+    long moved;
+    long blocked;
+    long arrivals;
+
+    AgentTask(AgentSwarm swarm, DistanceField field, int from, int to)
+    {
+        this.swarm = swarm;
+        this.field = field;
+        this.from = from;
+        this.to = to;
+    }
+
+    protected void compute()
+    {
+        if (this.to - this.from <= AgentSwarm.AGENTS_PER_TASK)
+        {
+            for (int agent = this.from; agent < this.to; agent++)
+            {
+                int outcome = this.swarm.update(agent, this.field);
+                if (outcome < SPAWNED)
+                {
+                    this.steps++;
+                }
+                if (outcome == MOVED)
+                {
+                    this.moved++;
+                }
+                else if (outcome == BLOCKED)
+                {
+                    this.blocked++;
+                }
+                else if (outcome == ARRIVED)
+                {
+                    this.arrivals++;
+                }
+            }
+        }
+        else
+        {
+            int middle = (this.from + this.to) >>> 1;
+            AgentTask left = new AgentTask(this.swarm, this.field, this.from, middle);
+            AgentTask right = new AgentTask(this.swarm, this.field, middle, this.to);
+            ForkJoinTask.invokeAll(left, right);
+            this.steps = left.steps + right.steps;
+            this.moved = left.moved + right.moved;
+            this.blocked = left.blocked + right.blocked;
+            this.arrivals = left.arrivals + right.arrivals;
+        }
+    }
+}
+
+//answers path questions between any two cells of a perfect maze without searching. a perfect
+//maze is a tree, so the path between two cells runs up from each to their lowest common
+//ancestor. each cell keeps its parent, its depth and one jump pointer, chosen so that the
+//jumps from any cell up to the root take O(log n) hops (the skew binary jump pointers of
+//Myers' random access lists); that finds ancestors and common ancestors in O(log n) with 12
+//bytes a cell, where binary lifting would need a table of log n ancestors per cell
+class TreePathIndex
+{
+    final MazeGrid maze;
+    final int[] parents; // each cell's parent, the root's being itself
+    final int[] depths; // the steps from each cell up to its root
+    final int[] jumps; // an ancestor of each cell, at most twice as far up as the last jump
+
+    // indexes the maze, rooting each of its separate parts at its lowest cell
+    TreePathIndex(MazeGrid maze)
+    {
+        this.maze = maze;
+        int cells = maze.cells();
+        this.parents = new int[cells];
+        this.depths = new int[cells];
+        this.jumps = new int[cells];
+        Arrays.fill(this.parents, -1);
+        int[] queue = new int[cells];
+        for (int root = 0; root < cells; root++)
+        {
+            if (this.parents[root] >= 0)
+            {
+                continue;
+            }
+            this.parents[root] = root;
+            this.jumps[root] = root;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+            while (head < tail)
+            {
+                int current = queue[head++];
+                for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+                {
+                    int next = maze.neighbor(current, dir);
+                    if (next < 0 || next == this.parents[current])
+                    {
+                        continue;
+                    }
+                    if (this.parents[next] >= 0)
+                    {
+                        throw new IllegalArgumentException("the maze has loops, so its paths "
+                                                           + "are not unique");
+                    }
+                    this.attach(next, current);
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    // hangs a cell under its parent, whose jump pointer is already set
+    void attach(int cell, int parent)
+    {
+        this.parents[cell] = parent;
+        this.depths[cell] = this.depths[parent] + 1;
+        int jump = this.jumps[parent];
+        int further = this.jumps[jump];
+        if (this.depths[parent] - this.depths[jump] == this.depths[jump] - this.depths[further])
+        {
+            this.jumps[cell] = further; // two jumps of the same length become one twice as long
+        }
+        else
+        {
+            this.jumps[cell] = parent;
+        }
+    }
+    // the ancestor of a cell at the given depth, which is no deeper than the cell
+    int ancestor(int cell, int depth)
+    {
+        while (this.depths[cell] > depth)
+        {
+            if (this.depths[this.jumps[cell]] >= depth)
+            {
+                cell = this.jumps[cell];
+            }
+            else
+            {
+                cell = this.parents[cell];
+            }
+        }
+        return cell;
+    }
+    // the deepest cell that is an ancestor of both, or -1 if they are not connected
+    int commonAncestor(int a, int b)
+    {
+        if (this.depths[a] > this.depths[b])
+        {
+            a = this.ancestor(a, this.depths[b]);
+        }
+        else
+        {
+            b = this.ancestor(b, this.depths[a]);
+        }
+        // cells at the same depth have jumps of the same length, so they move in step
+        while (a != b)
+        {
+            if (this.parents[a] == a)
+            {
+                return -1; // both reached roots, and different ones
+            }
+            if (this.jumps[a] != this.jumps[b])
+            {
+                a = this.jumps[a];
+                b = this.jumps[b];
+            }
+            else
+            {
+                a = this.parents[a];
+                b = this.parents[b];
+            }
+        }
+        return a;
+    }
+    // the number of steps between two cells, or -1 if there is no path
+    int distance(int a, int b)
+    {
+        int common = this.commonAncestor(a, b);
+        if (common < 0)
+        {
+            return -1;
+        }
+        return this.depths[a] + this.depths[b] - 2 * this.depths[common];
+    }
+    // the cells on the path from a to b, both included, or an empty array if there is no path
+    int[] path(int a, int b)
+    {
+        int common = this.commonAncestor(a, b);
+        if (common < 0)
+        {
+            return new int[0];
+        }
+        int up = this.depths[a] - this.depths[common];
+        int down = this.depths[b] - this.depths[common];
+        int[] path = new int[up + down + 1];
+        int cell = a;
+        for (int i = 0; i <= up; i++)
+        {
+            path[i] = cell;
+            cell = this.parents[cell];
+        }
+        cell = b;
+        for (int i = up + down; i > up; i--)
+        {
+            path[i] = cell;
+            cell = this.parents[cell];
+        }
+        return path;
+    }
+}
+
+//lifelong planning A* (LPA*, Koenig and Likhachev), a shortest path search that can be told a
+//wall has changed and then repairs its answer instead of starting over. every cell keeps g,
+//its distance when it was last expanded, and rhs, the best distance its neighbours' g values
+//offer; a cell is consistent when the two agree. a wall change only touches the rhs of the two
+//cells beside it, and the search then expands just the inconsistent cells that can matter to
+//the target, in A* order with the manhattan distance as the heuristic. the path is read off
+//the g values once the target is consistent and no cheaper key is waiting
+class LifelongSearch extends GridSearch
+{
+    static final int INFINITE = Integer.MAX_VALUE / 4; // no known way there
+
+    final int[] g; // the distance from the source when the cell was last expanded
+    final int[] rhs; // the distance from the source the neighbours' g values offer
+    final IntMinHeap open; // the inconsistent cells
+
+    LifelongSearch(MazeGrid maze, int source, int target)
+    {
+        super(maze, source, target);
+        this.g = new int[maze.cells()];
+        this.rhs = new int[maze.cells()];
+        this.open = new IntMinHeap(maze.cells());
+        this.reset();
+    }
+
+    String name()
+    {
+        return "lifelong";
+    }
+    int frontier()
+    {
+        return this.open.size();
+    }
+    void begin()
+    {
+        Arrays.fill(this.g, INFINITE);
+        Arrays.fill(this.rhs, INFINITE);
+        this.open.clear();
+        this.rhs[this.source] = 0;
+        this.open.push(this.source, this.key(this.source));
+    }
+    // expands the inconsistent cell with the smallest key, or once there is nothing left that
+    // could change the target's distance, reads off the path and returns -1
+    int step()
+    {
+        if (this.found)
+        {
+            return -1;
+        }
+        if (this.open.isEmpty() || this.settled())
+        {
+            if (this.target >= 0 && this.g[this.target] < INFINITE)
+            {
+                this.tracePath();
+                this.found = true;
+            }
+            return -1;
+        }
+        int current = this.open.pop();
+        this.expand(current);
+        if (this.g[current] > this.rhs[current])
+        {
+            this.g[current] = this.rhs[current];
+        }
+        else
+        {
+            this.g[current] = INFINITE;
+            this.update(current);
+        }
+        for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+        {
+            int next = this.maze.neighbor(current, dir);
+            if (next >= 0)
+            {
+                this.update(next);
+            }
+        }
+        return current;
+    }
+    // the target's distance cannot get any better
+    boolean settled()
+    {
+        if (this.target < 0)
+        {
+            return false;
+        }
+        return this.open.peekKey() >= this.key(this.target)
+            && this.rhs[this.target] == this.g[this.target];
+    }
+    // works out the cell's rhs again and puts it in open if it is inconsistent
+    void update(int cell)
+    {
+        if (cell != this.source)
+        {
+            int best = INFINITE;
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                int next = this.maze.neighbor(cell, dir);
+                if (next >= 0 && this.g[next] + 1 < best)
+                {
+                    best = this.g[next] + 1;
+                }
+            }
+            this.rhs[cell] = best;
+        }
+        this.open.remove(cell);
+        if (this.g[cell] != this.rhs[cell])
+        {
+            this.open.push(cell, this.key(cell));
+        }
+    }
+    // orders cells by their best estimate of a path through them, then by their distance
+    long key(int cell)
+    {
+        long distance = Math.min(this.g[cell], this.rhs[cell]);
+        return ((distance + this.estimate(cell)) << 32) | distance;
+    }
+    // the manhattan distance from a cell to the target, or 0 if there is no target
+    int estimate(int cell)
+    {
+        if (this.target < 0)
+        {
+            return 0;
+        }
+        int width = this.maze.width;
+        return Math.abs(cell % width - this.target % width)
+            + Math.abs(cell / width - this.target / width);
+    }
+    // points parents back along a shortest path, each cell to a neighbour one step closer
+    void tracePath()
+    {
+        for (int cell = this.target; cell != this.source; cell = this.parents[cell])
+        {
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                int next = this.maze.neighbor(cell, dir);
+                if (next >= 0 && this.g[next] == this.g[cell] - 1)
+                {
+                    this.parents[cell] = next;
+                    break;
+                }
+            }
+        }
+    }
+    // the wall between two neighbouring cells has been put up or knocked down; the old path is
+    // dropped and the next steps repair it
+    void wallChanged(int a, int b)
+    {
+        if (this.found && this.source != this.target)
+        {
+            for (int cell = this.target; cell != this.source; )
+            {
+                int parent = this.parents[cell];
+                this.parents[cell] = -1;
+                this.marks[cell] = EXPANDED;
+                cell = parent;
+            }
+            this.marks[this.source] = EXPANDED;
+            this.found = false;
+        }
+        this.update(a);
+        this.update(b);
+    }
+    // the length of the shortest path in steps, or -1 if there is none
+    int distance()
+    {
+        if (!this.found)
+        {
+            return -1;
+        }
+        return this.g[this.target];
+    }
+}
+
+//dijkstra's algorithm with the seed's edge weights as passage costs, so it finds the cheapest
+//path rather than the shortest. weights are below EDGE_WEIGHTS, so every cost waiting in the
+//frontier is within EDGE_WEIGHTS of the last one expanded and the frontier can be a
+//BucketQueue, with constant time pushes and pops; it can also use an IntMinHeap instead, as
+//the baseline the buckets are measured against
+class DijkstraSearch extends GridSearch
+{
+    final int[] costs; // the cheapest known cost from the source to each reached cell
+    final byte[] weights; // the maze's passage weights, or null if it is too big to keep them
+    final BucketQueue buckets; // the frontier, or null when heap is
+    final IntMinHeap heap;
+
+    DijkstraSearch(MazeGrid maze, int source, int target, boolean buckets)
+    {
+        super(maze, source, target);
+        this.costs = new int[maze.cells()];
+        this.weights = maze.weights();
+        if (buckets)
+        {
+            this.buckets = new BucketQueue(Maze.EDGE_WEIGHTS);
+            this.heap = null;
+        }
+        else
+        {
+            this.buckets = null;
+            this.heap = new IntMinHeap(maze.cells());
+        }
+        this.reset();
+    }
+
+    String name()
+    {
+        if (this.buckets == null)
+        {
+            return "dijkstra.heap";
+        }
+        return "dijkstra";
+    }
+    int frontier()
+    {
+        if (this.buckets == null)
+        {
+            return this.heap.size();
+        }
+        return this.buckets.size();
+    }
+    void begin()
+    {
+        this.costs[this.source] = 0;
+        if (this.buckets == null)
+        {
+            this.heap.clear();
+            this.heap.push(this.source, 0);
+        }
+        else
+        {
+            this.buckets.clear();
+            this.buckets.push(this.source, 0);
+        }
+    }
+    int step()
+    {
+        if (this.found || this.frontier() == 0)
+        {
+            return -1;
+        }
+        int current;
+        if (this.buckets == null)
+        {
+            current = this.heap.pop();
+        }
+        else
+        {
+            current = this.buckets.pop();
+            while (this.costs[current] < this.buckets.lastKey()) // a copy left behind by a cheaper push
+            {
+                if (this.buckets.isEmpty())
+                {
+                    return -1;
+                }
+                current = this.buckets.pop();
+            }
+        }
+        this.expand(current);
+        if (current == this.target)
+        {
+            this.found = true;
+            return current;
+        }
+        for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+        {
+            int next = this.maze.neighbor(current, dir);
+            if (next < 0)
+            {
+                continue;
+            }
+            int cost = this.costs[current] + this.weight(current, dir);
+            if (this.parents[next] < 0 || cost < this.costs[next])
+            {
+                this.parents[next] = current;
+                this.costs[next] = cost;
+                if (this.buckets == null)
+                {
+                    this.heap.push(next, cost);
+                }
+                else
+                {
+                    this.buckets.push(next, cost);
+                }
+            }
+        }
+        return current;
+    }
+    // the weight of the passage from the cell in the direction, from the maze's kept weights
+    int weight(int cell, int dir)
+    {
+        if (this.weights == null)
+        {
+            return this.maze.weight(cell, dir);
+        }
+        if (dir == MazeGrid.UP || dir == MazeGrid.LEFT)
+        {
+            cell = MazeGrid.step(cell, dir, this.maze.width);
+            dir = MazeGrid.opposite(dir);
+        }
+        return this.weights[2 * cell + (dir >> 1)];
+    }
+    // the cost of the cheapest path, or -1 if the target was not reached
+    int cost()
+    {
+        if (!this.found)
+        {
+            return -1;
+        }
+        return this.costs[this.target];
+    }
+}
+
+//a monotone bucket queue (Dial's) of ints keyed by small non-negative ints. no key pushed is
+//below the last key popped or span or more above it, so a ring of span buckets holds the
+//queue, each bucket a growable int array used as a stack: pushes and pops are an array write
+//or read, and pops only walk forward over empty buckets. there is no decrease-key; a value
+//pushed again with a lower key is in the queue twice, and the caller skips the stale copy
+//when it comes out later under its old key, which lastKey() tells it
+class BucketQueue
+{
+    final int[][] buckets; // the values waiting in each bucket
+    final int[] counts; // how many are in each
+    final int span;
+    int lowest; // no key in the queue is below this, and the last value popped had this key
+    int current; // the bucket for lowest, kept as lowest moves so there is no division
+    int size;
+
+    BucketQueue(int span)
+    {
+        this.buckets = new int[span][];
+        this.counts = new int[span];
+        this.span = span;
+        for (int b = 0; b < span; b++)
+        {
+            this.buckets[b] = new int[4];
+        }
+        this.clear();
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+    boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+    // adds the value with the key
+    void push(int value, int key)
+    {
+        if (key < this.lowest || key >= this.lowest + this.span)
+        {
+            throw new IllegalArgumentException("key " + key + " is outside [" + this.lowest + ", "
+                                               + (this.lowest + this.span) + ")");
+        }
+        int b = this.current + key - this.lowest;
+        if (b >= this.span)
+        {
+            b -= this.span;
+        }
+        if (this.counts[b] == this.buckets[b].length)
+        {
+            this.buckets[b] = Arrays.copyOf(this.buckets[b], 2 * this.counts[b]);
+        }
+        this.buckets[b][this.counts[b]++] = value;
+        this.size++;
+    }
+    // removes and returns a value with the smallest key
+    int pop()
+    {
+        if (this.size == 0)
+        {
+            throw new NoSuchElementException("the queue is empty");
+        }
+        while (this.counts[this.current] == 0)
+        {
+            this.lowest++;
+            this.current++;
+            if (this.current == this.span)
+            {
+                this.current = 0;
+            }
+        }
+        this.size--;
+        return this.buckets[this.current][--this.counts[this.current]];
+    }
+    // the key of the value pop last returned
+    int lastKey()
+    {
+        return this.lowest;
+    }
+    // empties the queue and starts the keys from 0 again, keeping the buckets' arrays
+    void clear()
+    {
+        Arrays.fill(this.counts, 0);
+        this.lowest = 0;
+        this.current = 0;
+        this.size = 0;
+    }
+}
+
+//a maze with its corridors contracted: the vertices are the cells that are not in the middle
+//of a corridor (dead ends, branches, and any cells pinned by the caller such as a search's
+//source and target) and each edge is a corridor between two of them, weighted by its length.
+//perfect mazes are mostly corridors, so this is a fraction of the size of the maze. the edges
+//are kept in compressed arrays, each vertex's edges in one run, and store only the direction
+//they leave in, since a corridor can be walked again from the maze when its cells are needed
+class JunctionGraph
+{
+    final MazeGrid maze;
+    final int[] vertexOf; // the vertex of each cell, -1 for a corridor cell
+    final int[] cellOf; // the cell of each vertex
+    final int[] firstEdge; // vertex v's edges are firstEdge[v] until firstEdge[v + 1]
+    final int[] edgeTo; // the vertex at the far end of each edge
+    final int[] edgeLength; // the steps from one end of each edge to the other
+    final byte[] edgeDirection; // the direction each edge leaves its vertex in
+    final boolean acyclic; // at most one path joins any two vertices, as in a perfect maze
+
+    JunctionGraph(MazeGrid maze, int... pinned)
+    {
+        this.maze = maze;
+        int cells = maze.cells();
+        this.vertexOf = new int[cells];
+        int[] out = new int[4];
+        int vertices = 0;
+        int edges = 0;
+        for (int cell = 0; cell < cells; cell++)
+        {
+            int degree = maze.neighbors(cell, out);
+            if (degree == 2)
+            {
+                this.vertexOf[cell] = -1;
+            }
+            else
+            {
+                this.vertexOf[cell] = vertices++;
+                edges += degree;
+            }
+        }
+        for (int cell: pinned)
+        {
+            if (cell >= 0 && this.vertexOf[cell] < 0)
+            {
+                this.vertexOf[cell] = vertices++;
+                edges += 2;
+            }
+        }
+        this.cellOf = new int[vertices];
+        for (int cell = 0; cell < cells; cell++)
+        {
+            if (this.vertexOf[cell] >= 0)
+            {
+                this.cellOf[this.vertexOf[cell]] = cell;
+            }
+        }
+        this.firstEdge = new int[vertices + 1];
+        this.edgeTo = new int[edges];
+        this.edgeLength = new int[edges];
+        this.edgeDirection = new byte[edges];
+        DisjointSet trees = new DisjointSet(vertices); // an edge inside a tree closes a loop
+        boolean acyclic = true;
+        int e = 0;
+        for (int v = 0; v < vertices; v++)
+        {
+            this.firstEdge[v] = e;
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                if (maze.isOpen(this.cellOf[v], dir))
+                {
+                    int previous = this.cellOf[v];
+                    int current = MazeGrid.step(previous, dir, maze.width);
+                    int length = 1;
+                    while (this.vertexOf[current] < 0)
+                    {
+                        int next = this.onward(current, previous);
+                        previous = current;
+                        current = next;
+                        length++;
+                    }
+                    this.edgeTo[e] = this.vertexOf[current];
+                    this.edgeLength[e] = length;
+                    this.edgeDirection[e] = (byte) dir;
+                    if (v <= this.edgeTo[e] && !trees.union(v, this.edgeTo[e]))
+                    {
+                        acyclic = false; // each edge is seen from both ends, so join it once
+                    }
+                    e++;
+                }
+            }
+        }
+        this.firstEdge[vertices] = e;
+        this.acyclic = acyclic;
+    }
+
+    int vertices()
+    {
+        return this.cellOf.length;
+    }
+    int edges()
+    {
+        return this.edgeTo.length;
+    }
+    // the way on from a corridor cell entered from previous
+    int onward(int corridor, int previous)
+    {
+        for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+        {
+            int next = this.maze.neighbor(corridor, dir);
+            if (next >= 0 && next != previous)
+            {
+                return next;
+            }
+        }
+        throw new IllegalStateException("cell " + corridor + " is not in a corridor");
+    }
+    // walks edge e from the cell of its vertex, pointing each cell along it at the one before
+    void unfold(int e, int from, int[] parents)
+    {
+        int previous = this.cellOf[from];
+        int current = MazeGrid.step(previous, this.edgeDirection[e], this.maze.width);
+        parents[current] = previous;
+        while (this.vertexOf[current] < 0)
+        {
+            int next = this.onward(current, previous);
+            parents[next] = current;
+            previous = current;
+            current = next;
+        }
+    }
+}
+
+//searches a JunctionGraph, so a step expands a whole junction rather than a cell. on a graph
+//with loops this is dijkstra's algorithm with corridor lengths as the weights; on an acyclic
+//one, which is what a perfect maze contracts to, the only path is also the shortest, so the
+//junctions go on a plain stack and the heap is skipped. only junctions are marked as expanded;
+//once the target is expanded the corridors on the way to it are walked to fill in parents, so
+//pathLength, markPath and backTrack see the same cell path as any other search. the source
+//and target must be vertices of the graph, which they are when it was built with them pinned
+class JunctionSearch extends GridSearch
+{
+    final JunctionGraph graph;
+    final int[] distances; // steps from the source to each reached vertex
+    final int[] via; // the edge each reached vertex was reached along, -1 for the source
+    final int[] from; // the vertex at the other end of that edge
+    final IntMinHeap open; // the frontier when the graph has loops
+    final int[] stack; // the frontier when it does not
+    int top;
+
+    JunctionSearch(JunctionGraph graph, int source, int target)
+    {
+        super(graph.maze, source, target);
+        this.graph = graph;
+        this.distances = new int[graph.vertices()];
+        this.via = new int[graph.vertices()];
+        this.from = new int[graph.vertices()];
+        if (graph.acyclic)
+        {
+            this.open = null;
+            this.stack = new int[graph.vertices()];
+        }
+        else
+        {
+            this.open = new IntMinHeap(graph.vertices());
+            this.stack = null;
+        }
+        this.reset();
+    }
+
+    String name()
+    {
+        return "junction";
+    }
+    int frontier()
+    {
+        if (this.graph.acyclic)
+        {
+            return this.top;
+        }
+        return this.open.size();
+    }
+    void begin()
+    {
+        Arrays.fill(this.via, -2); // -2 for not reached
+        int start = this.graph.vertexOf[this.source];
+        this.distances[start] = 0;
+        this.via[start] = -1;
+        if (this.graph.acyclic)
+        {
+            this.top = 0;
+            this.stack[this.top++] = start;
+        }
+        else
+        {
+            this.open.clear();
+            this.open.push(start, 0);
+        }
+    }
+    int step()
+    {
+        if (this.found || this.frontier() == 0)
+        {
+            return -1;
+        }
+        int v;
+        if (this.graph.acyclic)
+        {
+            v = this.stack[--this.top];
+        }
+        else
+        {
+            v = this.open.pop();
+        }
+        int cell = this.graph.cellOf[v];
+        this.expand(cell);
+        if (cell == this.target)
+        {
+            this.unfold(v);
+            this.found = true;
+            return cell;
+        }
+        for (int e = this.graph.firstEdge[v]; e < this.graph.firstEdge[v + 1]; e++)
+        {
+            int next = this.graph.edgeTo[e];
+            int distance = this.distances[v] + this.graph.edgeLength[e];
+            if (this.via[next] == -2 || distance < this.distances[next])
+            {
+                this.distances[next] = distance;
+                this.via[next] = e;
+                this.from[next] = v;
+                if (this.graph.acyclic)
+                {
+                    this.stack[this.top++] = next; // reached once, since only one path leads here
+                }
+                else
+                {
+                    this.open.push(next, distance);
+                }
+            }
+        }
+        return cell;
+    }
+    // fills in the cell parents along the corridors from the source's vertex to v
+    void unfold(int v)
+    {
+        for (int at = v; this.via[at] >= 0; at = this.from[at])
+        {
+            this.graph.unfold(this.via[at], this.from[at], this.parents);
+        }
+    }
+    // the length of the path in steps, known without unfolding it
+    int distance()
+    {
+        if (!this.found)
+        {
+            return -1;
+        }
+        return this.distances[this.graph.vertexOf[this.target]];
+    }
+}
+
+//generates and solves mazes back to back without a World, one generator reused for all of
+//them, and reports how fast that went. run with
+//"java BatchSolver [count] [width] [height] [search]", e.g. "java BatchSolver 100 512 512 astar"
+class BatchSolver
+{
+    static final String USAGE = "usage: java BatchSolver [count] [width] [height] [search]";
+
+    final KruskalGenerator generator = new KruskalGenerator();
+    final String search;
+    final int width;
+    final int height;
+
+    BatchSolver(String search, int width, int height)
+    {
+        GridSearch.named(search, new MazeGrid(1, 1), 0, 0); // fails now on an unknown name
+        this.search = search;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static void main(String[] args)
+    {
+        int count = 20;
+        int width = Maze.MAZE_WIDTH;
+        int height = Maze.MAZE_HEIGHT;
+        String search = "bfs";
+        if (args.length == 2) // a width without a height
+        {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (args.length > 0)
+        {
+            count = Integer.parseInt(args[0]);
+        }
+        if (args.length > 2)
+        {
+            width = Integer.parseInt(args[1]);
+            height = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3)
+        {
+            search = args[3];
+        }
+        System.out.println(new BatchSolver(search, width, height).run(count, new Random().nextLong()));
+    }
+
+    // generates and solves count mazes from seeds first, first + 1, ...
+    BatchReport run(int count, long first)
+    {
+        BatchReport report = new BatchReport(this.search, this.width, this.height);
+        for (int i = 0; i < count; i++)
+        {
+            long start = System.nanoTime();
+            MazeGrid maze = this.generator.generate(this.width, this.height, first + i);
+            long generated = System.nanoTime();
+            GridSearch solver = GridSearch.solve(this.search, maze);
+            long solved = System.nanoTime();
+            report.add(solver, generated - start, solved - generated);
+        }
+        return report;
+    }
+}
+
+//the totals of a BatchSolver run
+class BatchReport
+{
+    final String search;
+    final int width;
+    final int height;
+    int mazes;
+    int solved; // mazes whose exit the search reached
+    long expanded; // cells expanded over all the mazes
+    long generateNanos;
+    long solveNanos;
+
+    BatchReport(String search, int width, int height)
+    {
+        this.search = search;
+        this.width = width;
+        this.height = height;
+    }
+
+    void add(GridSearch solver, long generateNanos, long solveNanos)
+    {
+        this.mazes++;
+        if (solver.found)
+        {
+            this.solved++;
+        }
+        this.expanded += solver.expanded;
+        this.generateNanos += generateNanos;
+        this.solveNanos += solveNanos;
+    }
+    // mazes generated and solved per second, counting both
+    double mazesPerSecond()
+    {
+        return this.mazes / ((this.generateNanos + this.solveNanos) / 1e9);
+    }
+    // cells the search expanded per second of solving
+    double nodesPerSecond()
+    {
+        return this.expanded / (this.solveNanos / 1e9);
+    }
+    public String toString()
+    {
+        return String.format("%d %dx%d mazes with %s (%d solved): %.1f mazes/s, %.3g nodes/s, "
+                             + "%.1f ms generating, %.1f ms solving",
+                             this.mazes, this.width, this.height, this.search, this.solved,
+                             this.mazesPerSecond(), this.nodesPerSecond(),
+                             this.generateNanos / 1e6, this.solveNanos / 1e6);
+    }
+}
+
+//receives the mazes of a BatchGenerator run. it is called from the worker threads, several at
+//a time, and only borrows the maze: the grid is carved over with the worker's next maze as
+//soon as accept returns
+interface MazeSink
+{
+    // index counts the mazes of the run from 0; the maze's seed is the run's first plus index
+    void accept(long index, MazeGrid maze) throws IOException;
+}
+
+//writes each maze to a stream in the maze file format, one after another in the order they
+//were finished, so MazeFile.read can read them back
+class StreamSink implements MazeSink
+{
+    final WritableByteChannel out;
+    final ByteBuffer buffer = MazeFile.buffer();
+
+    StreamSink(OutputStream out)
+    {
+        this.out = Channels.newChannel(out);
+    }
+
+    public synchronized void accept(long index, MazeGrid maze) throws IOException
+    {
+        MazeFile.write(maze, this.out, this.buffer);
+    }
+}
+
+//saves each maze to a maze file of its own, maze-<index>.bin, in a directory
+class DirectorySink implements MazeSink
+{
+    final Path directory;
+    final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>(); // one for each worker
+
+    DirectorySink(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    public void accept(long index, MazeGrid maze) throws IOException
+    {
+        ByteBuffer buffer = this.buffers.get();
+        if (buffer == null)
+        {
+            buffer = MazeFile.buffer();
+            this.buffers.set(buffer);
+        }
+        Path path = this.directory.resolve("maze-" + index + ".bin");
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MazeFile.write(maze, out, buffer);
+        }
+    }
+}
+
+//generates many mazes of one size, from consecutive seeds, on a fixed number of worker
+//threads and hands them to a MazeSink. each worker keeps its own KruskalGenerator and one
+//MazeGrid, which it carves every maze into, for as long as the BatchGenerator lives, so once
+//they have grown to the maze size generating another maze allocates nothing. workers take
+//the next seed from a shared counter, so a slow maze holds up no one else, and a worker that
+//fails moves the counter to the end, so the others stop after the maze they are on. run with
+//"java BatchGenerator [count] [width] [height] [workers] [file]"; without a file the mazes
+//are generated and thrown away
+class BatchGenerator
+{
+    static final String USAGE = "usage: java BatchGenerator [count] [width] [height] [workers] [file]";
+
+    final int width;
+    final int height;
+    final int workers;
+    final KruskalGenerator[] generators; // each worker's buffers
+    final MazeGrid[] grids;
+
+    BatchGenerator(int width, int height, int workers)
+    {
+        if (workers < 1)
+        {
+            throw new IllegalArgumentException("a batch needs at least one worker");
+        }
+        if ((long) width * height > KruskalGenerator.MAX_CELLS)
+        {
+            throw new IllegalArgumentException("maze too large: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.workers = workers;
+        this.generators = new KruskalGenerator[workers];
+        this.grids = new MazeGrid[workers];
+        for (int w = 0; w < workers; w++)
+        {
+            this.generators[w] = new KruskalGenerator();
+            this.grids[w] = new MazeGrid(width, height);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        long count = 1000;
+        int width = 512;
+        int height = 512;
+        int workers = Runtime.getRuntime().availableProcessors();
+        if (args.length == 2) // a width without a height
+        {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (args.length > 0)
+        {
+            count = Long.parseLong(args[0]);
+        }
+        if (args.length > 2)
+        {
+            width = Integer.parseInt(args[1]);
+            height = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3)
+        {
+            workers = Integer.parseInt(args[3]);
+        }
+        OutputStream out = OutputStream.nullOutputStream();
+        if (args.length > 4)
+        {
+            out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[4])), 1 << 16);
+        }
+        try
+        {
+            BatchGenerator batch = new BatchGenerator(width, height, workers);
+            System.out.println(batch.run(count, new Random().nextLong(), new StreamSink(out)));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    // generates count mazes from seeds first, first + 1, ... and gives each to the sink
+    GenerationReport run(long count, long first, MazeSink sink) throws IOException
+    {
+        AtomicLong next = new AtomicLong();
+        ArrayList<GenerationWorker> tasks = new ArrayList<GenerationWorker>();
+        for (int w = 0; w < this.workers; w++)
+        {
+            tasks.add(new GenerationWorker(this.generators[w], this.grids[w], next, count, first, sink));
+        }
+        GenerationReport report = new GenerationReport(this.width, this.height, this.workers);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+        try
+        {
+            CompletionService<GenerationWorker> running = new ExecutorCompletionService<GenerationWorker>(pool);
+            for (GenerationWorker task: tasks)
+            {
+                running.submit(task);
+            }
+            for (int w = 0; w < this.workers; w++)
+            {
+                report.add(BatchGenerator.await(running, next, count));
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        report.nanos = System.nanoTime() - start;
+        return report;
+    }
+    // waits for whichever worker finishes next and passes its failure on if it failed. a
+    // failed worker has already stopped the others; if this thread is interrupted, it stops them
+    static GenerationWorker await(CompletionService<GenerationWorker> running, AtomicLong next, long count)
+        throws IOException
+    {
+        try
+        {
+            return running.take().get();
+        }
+        catch (InterruptedException e)
+        {
+            next.set(count);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while generating mazes");
+        }
+        catch (ExecutionException e)
+        {
+            next.set(count);
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("could not generate a maze", e.getCause());
+        }
+    }
+}
+
+//one worker of a BatchGenerator run
+class GenerationWorker implements Callable<GenerationWorker>
+{
+    final KruskalGenerator generator;
+    final MazeGrid grid;
+    final AtomicLong next; // the index of the next maze to generate, shared by the workers
+    final long count;
+    final long first;
+    final MazeSink sink;
+    long mazes; // generated by this worker
+    long allocated = -1; // bytes this thread allocated after its first maze, -1 if unknown
+
+    GenerationWorker(KruskalGenerator generator, MazeGrid grid, AtomicLong next, long count,
+                     long first, MazeSink sink)
+    {
+        this.generator = generator;
+        this.grid = grid;
+        this.next = next;
+        this.count = count;
+        this.first = first;
+        this.sink = sink;
+    }
+
+    public GenerationWorker call() throws IOException
+    {
+        long warm = -1; // allocation so far once the first maze has grown every buffer
+        try
+        {
+            for (long i = this.next.getAndIncrement(); i < this.count; i = this.next.getAndIncrement())
+            {
+                this.generator.generate(this.grid, this.first + i);
+                this.sink.accept(i, this.grid);
+                this.mazes++;
+                if (this.mazes == 1)
+                {
+                    warm = GenerationWorker.allocatedBytes();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            this.next.set(this.count); // no other worker takes another maze
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            this.next.set(this.count);
+            throw e;
+        }
+        if (warm >= 0)
+        {
+            this.allocated = GenerationWorker.allocatedBytes() - warm;
+        }
+        return this;
+    }
+    // bytes the current thread has allocated so far, or -1 where the JVM cannot tell
+    static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
+
+//the totals of a BatchGenerator run
+class GenerationReport
+{
+    final int width;
+    final int height;
+    final int workers;
+    long mazes;
+    long nanos;
+    long warmMazes; // mazes after each worker's first, whose allocation is in allocated
+    long allocated; // bytes allocated by workers generating those mazes, -1 if unknown
+
+    GenerationReport(int width, int height, int workers)
+    {
+        this.width = width;
+        this.height = height;
+        this.workers = workers;
+    }
+
+    void add(GenerationWorker worker)
+    {
+        this.mazes += worker.mazes;
+        if (worker.allocated < 0 || this.allocated < 0)
+        {
+            this.allocated = -1;
+        }
+        else if (worker.mazes > 1)
+        {
+            this.allocated += worker.allocated;
+            this.warmMazes += worker.mazes - 1;
+        }
+    }
+    double mazesPerSecond()
+    {
+        return this.mazes / (this.nanos / 1e9);
+    }
+    // bytes allocated for each maze once the buffers were warm, -1 if unknown
+    double bytesPerMaze()
+    {
+        if (this.allocated < 0)
+        {
+            return -1;
+        }
+        return (double) this.allocated / Math.max(this.warmMazes, 1);
+    }
+    public String toString()
+    {
+        return String.format("%d %dx%d mazes on %d workers: %.1f mazes/s, %.3g cells/s, "
+                             + "%.1f bytes allocated a maze after warmup",
+                             this.mazes, this.width, this.height, this.workers, this.mazesPerSecond(),
+                             this.mazesPerSecond() * this.width * this.height, this.bytesPerMaze());
+    }
+}
+
+//a binary min heap of the ints [0, capacity) keyed by longs, kept in primitive arrays. each
+//value is in the heap at most once and the heap tracks where, so pushing a value that is
+//already there changes its key in place instead of adding a second entry. keys are stored in
+//heap order beside their values, so sifting compares neighbouring slots rather than chasing
+//each value to its key
+class IntMinHeap
+{
+    final int[] heap; // the values in heap order
+    final long[] keys; // the key of the value in the same slot of heap
+    final int[] positions; // where each value is in heap, -1 if it is not in the heap
+    int size;
+
+    IntMinHeap(int capacity)
+    {
+        this.heap = new int[capacity];
+        this.keys = new long[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(this.positions, -1);
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+    boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+    boolean contains(int value)
+    {
+        return this.positions[value] >= 0;
+    }
+    // adds the value with the key, or gives it the key if it is already in the heap
+    void push(int value, long key)
+    {
+        int at = this.positions[value];
+        if (at < 0)
+        {
+            this.size++;
+            this.siftUp(this.size - 1, value, key);
+        }
+        else if (key < this.keys[at])
+        {
+            this.siftUp(at, value, key);
+        }
+        else
+        {
+            this.siftDown(at, value, key);
+        }
+    }
+    // the value with the smallest key, without removing it
+    int peek()
+    {
+        if (this.size == 0)
+        {
+            throw new NoSuchElementException("the heap is empty");
+        }
+        return this.heap[0];
+    }
+    // the smallest key in the heap
+    long peekKey()
+    {
+        this.peek();
+        return this.keys[0];
+    }
+    // removes and returns the value with the smallest key
+    int pop()
+    {
+        int top = this.peek();
+        this.remove(top);
+        return top;
+    }
+    // takes the value out of the heap if it is there
+    void remove(int value)
+    {
+        int at = this.positions[value];
+        if (at < 0)
+        {
+            return;
+        }
+        this.positions[value] = -1;
+        this.size--;
+        if (at == this.size)
+        {
+            return;
+        }
+        int last = this.heap[this.size];
+        long key = this.keys[this.size];
+        if (at > 0 && key < this.keys[(at - 1) >>> 1])
+        {
+            this.siftUp(at, last, key);
+        }
+        else
+        {
+            this.siftDown(at, last, key);
+        }
+    }
+    // empties the heap in time proportional to its size
+    void clear()
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            this.positions[this.heap[i]] = -1;
+        }
+        this.size = 0;
+    }
+    // puts the value and key in the hole at, or above it if they belong higher
+    void siftUp(int at, int value, long key)
+    {
+        while (at > 0)
+        {
+            int parent = (at - 1) >>> 1;
+            if (this.keys[parent] <= key)
+            {
+                break;
+            }
+            this.heap[at] = this.heap[parent];
+            this.keys[at] = this.keys[parent];
+            this.positions[this.heap[at]] = at;
+            at = parent;
+        }
+        this.heap[at] = value;
+        this.keys[at] = key;
+        this.positions[value] = at;
+    }
+    // puts the value and key in the hole at, or below it if they belong lower
+    void siftDown(int at, int value, long key)
+    {
+        int half = this.size >>> 1;
+        while (at < half)
+        {
+            int child = 2 * at + 1;
+            if (child + 1 < this.size && this.keys[child + 1] < this.keys[child])
+            {
+                child++;
+            }
+            if (key <= this.keys[child])
+            {
+                break;
+            }
+            this.heap[at] = this.heap[child];
+            this.keys[at] = this.keys[child];
+            this.positions[this.heap[at]] = at;
+            at = child;
+        }
+        this.heap[at] = value;
+        this.keys[at] = key;
+        this.positions[value] = at;
+    }
+}
+
+//the order in which a run expanded cells, or in which the player walked onto them, kept so the
+//run can be watched again without searching again. each cell is stored as its difference from
+//the one before, zigzagged so small steps either way are small numbers, in a varint of seven
+//bits a byte; a search's next cell is nearly always close to its last, so most cells take one
+//or two bytes rather than four. every CHECKPOINT_INTERVAL cells the byte offset and the cell
+//before are kept, so reading can start at any step after decoding at most that many cells
+class SearchTrace
+{
+    static final int CHECKPOINT_INTERVAL = 256;
+
+    byte[] bytes = new byte[64];
+    int size; // bytes used
+    int length; // cells recorded
+    int last; // the last cell recorded, which the next one is stored relative to
+    int[] offsets = new int[16]; // where each checkpoint's first cell starts in bytes
+    int[] previous = new int[16]; // the cell before each checkpoint's first cell
+    int[] path = new int[0]; // the path the run ended with, first to last, if it found one
+
+    void add(int cell)
+    {
+        if (this.length % CHECKPOINT_INTERVAL == 0)
+        {
+            int checkpoint = this.length / CHECKPOINT_INTERVAL;
+            if (checkpoint == this.offsets.length)
+            {
+                this.offsets = Arrays.copyOf(this.offsets, checkpoint * 2);
+                this.previous = Arrays.copyOf(this.previous, checkpoint * 2);
+            }
+            this.offsets[checkpoint] = this.size;
+            this.previous[checkpoint] = this.last;
+        }
+        if (this.size + 5 > this.bytes.length)
+        {
+            this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+        }
+        int delta = cell - this.last;
+        int zigzag = (delta << 1) ^ (delta >> 31);
+        while ((zigzag & ~0x7f) != 0)
+        {
+            this.bytes[this.size++] = (byte) (zigzag | 0x80);
+            zigzag >>>= 7;
+        }
+        this.bytes[this.size++] = (byte) zigzag;
+        this.last = cell;
+        this.length++;
+    }
+    void finish(int[] path)
+    {
+        this.path = path;
+    }
+    // a reader whose next cell is the one recorded at the given step, counting from 0
+    TraceReader reader(int step)
+    {
+        if (step < 0 || step > this.length)
+        {
+            throw new IndexOutOfBoundsException("step " + step + " of " + this.length);
+        }
+        int checkpoint = step / CHECKPOINT_INTERVAL;
+        TraceReader reader;
+        if (checkpoint * CHECKPOINT_INTERVAL == this.length) // no checkpoint written there yet
+        {
+            reader = new TraceReader(this, this.size, this.last, step);
+        }
+        else
+        {
+            reader = new TraceReader(this, this.offsets[checkpoint], this.previous[checkpoint],
+                                     checkpoint * CHECKPOINT_INTERVAL);
+        }
+        while (reader.step < step)
+        {
+            reader.next();
+        }
+        return reader;
+    }
+    // the cell recorded at the given step
+    int get(int step)
+    {
+        return this.reader(step).next();
+    }
+    double bytesPerCell()
+    {
+        return (double) this.size / Math.max(this.length, 1);
+    }
+}
+
+//reads a SearchTrace forwards from some step
+class TraceReader
+{
+    final SearchTrace trace;
+    int offset; // where the next cell starts
+    int cell; // the cell last read
+    int step; // the step the next cell was recorded at
+
+    TraceReader(SearchTrace trace, int offset, int cell, int step)
+    {
+        this.trace = trace;
+        this.offset = offset;
+        this.cell = cell;
+        this.step = step;
+    }
+
+    boolean hasNext()
+    {
+        return this.step < this.trace.length;
+    }
+    int next()
+    {
+        if (!this.hasNext())
+        {
+            throw new NoSuchElementException("the trace has " + this.trace.length + " cells");
+        }
+        int zigzag = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = this.trace.bytes[this.offset++];
+            zigzag |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+        this.cell += (zigzag >>> 1) ^ -(zigzag & 1);
+        this.step++;
+        return this.cell;
+    }
+}
+
+//races several searches on the same maze at once. each search runs on its own thread, a
+//virtual one on Java 21 and later, with its own GridSearch, so they share nothing but the maze,
+//which none of them writes. virtual threads are looked up at run time so the file still
+//builds on older JDKs
+class SolverRace
+{
+    final MazeGrid maze;
+    final int source;
+    final int target;
+
+    SolverRace(MazeGrid maze, int source, int target)
+    {
+        this.maze = maze;
+        this.source = source;
+        this.target = target;
+    }
+
+    // races every search GridSearch knows about
+    ArrayList<RaceResult> run() throws InterruptedException
+    {
+        return this.run(GridSearch.NAMES);
+    }
+    // races the named searches and returns their results winner first: the searches that found
+    // the target in the order they finished, then the ones that did not
+    ArrayList<RaceResult> run(String... names) throws InterruptedException
+    {
+        // the searches allocate their arrays here so that no thread starts with a head start
+        ArrayList<GridSearch> searches = new ArrayList<GridSearch>();
+        for (String name: names)
+        {
+            searches.add(GridSearch.named(name, this.maze, this.source, this.target));
+        }
+        return SolverRace.race(searches);
+    }
+    // races searches that are ready to run. if any of them fails or is interrupted, that
+    // failure comes out of race once every search has stopped
+    static ArrayList<RaceResult> race(ArrayList<GridSearch> searches) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger finishes = new AtomicInteger();
+        ArrayList<Future<RaceResult>> entrants = new ArrayList<Future<RaceResult>>();
+        ExecutorService threads = SolverRace.threads();
+        try
+        {
+            for (GridSearch search: searches)
+            {
+                entrants.add(threads.submit(new RaceEntrant(search, start, finishes)));
+            }
+            start.countDown();
+            threads.shutdown();
+            threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS); // every search finishes
+        }
+        finally
+        {
+            threads.shutdownNow(); // only matters if this thread was interrupted while waiting
+        }
+        ArrayList<RaceResult> results = new ArrayList<RaceResult>();
+        for (Future<RaceResult> entrant: entrants)
+        {
+            results.add(SolverRace.await(entrant));
+        }
+        Collections.sort(results, new RaceOrder());
+        for (int i = 0; i < results.size(); i++)
+        {
+            results.get(i).place = i;
+        }
+        return results;
+    }
+    // a thread per task, virtual where the JDK has them
+    static ExecutorService threads()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool();
+        }
+    }
+    // the result of a finished entrant, or the failure that stopped it
+    static RaceResult await(Future<RaceResult> entrant) throws InterruptedException
+    {
+        try
+        {
+            return entrant.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException)
+            {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("a search failed", cause);
+        }
+    }
+}
+
+//one search in a SolverRace. a search that stops, whether or not it found the target, gets
+//the next finishing position; one that fails or is interrupted gets none
+class RaceEntrant implements Callable<RaceResult>
+{
+    final GridSearch search;
+    final CountDownLatch start; // released once every entrant is ready
+    final AtomicInteger finishes; // hands out finishing positions
+
+    RaceEntrant(GridSearch search, CountDownLatch start, AtomicInteger finishes)
+    {
+        this.search = search;
+        this.start = start;
+        this.finishes = finishes;
+    }
+
+    public RaceResult call() throws InterruptedException
+    {
+        this.start.await();
+        long begin = System.nanoTime();
+        this.search.run();
+        long nanos = System.nanoTime() - begin;
+        return new RaceResult(this.search, nanos, this.finishes.getAndIncrement());
+    }
+}
+
+//ranks race results: a search that found the target beats one that did not, then the first to
+//finish wins
+class RaceOrder implements Comparator<RaceResult>
+{
+    public int compare(RaceResult r1, RaceResult r2)
+    {
+        if (r1.found != r2.found)
+        {
+            if (r1.found)
+            {
+                return -1;
+            }
+            return 1;
+        }
+        return r1.finish - r2.finish;
+    }
+}
+
+//how one search did in a SolverRace
+class RaceResult
+{
+    final String name;
+    final boolean found;
+    final int expanded; // cells expanded before the search stopped
+    final int pathLength;
+    final long nanos; // wall time spent searching
+    final int finish; // the order it stopped in, 0 for the first, found or not
+    int place; // 0 for the winner; searches that did not find the target come after all that did
+
+    RaceResult(GridSearch search, long nanos, int finish)
+    {
+        this.name = search.name();
+        this.found = search.found;
+        this.expanded = search.expanded;
+        this.pathLength = search.pathLength();
+        this.nanos = nanos;
+        this.finish = finish;
+        this.place = finish;
+    }
+
+    public String toString()
+    {
+        String path = "path " + this.pathLength;
+        if (!this.found)
+        {
+            path = "no path";
+        }
+        return String.format("%d. %-13s %10d expanded %10.2f ms  %s",
+                             this.place + 1, this.name, this.expanded, this.nanos / 1e6, path);
+    }
+}
+
+//edge weights that depend only on a seed and where the edge is. every weight is a hash of
+//(seed, x, y, direction) rather than the next draw from a shared generator, so weights can be
+//computed in any order on any number of threads and a seed always gives the same maze
+class EdgeWeights
+{
+    static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    // the weight in [0, Maze.EDGE_WEIGHTS) of the edge leaving (x, y) to the RIGHT or DOWN
+    static int weight(long seed, int x, int y, int dir)
+    {
+        long h = EdgeWeights.hash(seed, x, y, dir);
+        return (int) (((h >>> 32) * Maze.EDGE_WEIGHTS) >>> 32);
+    }
+    // a fair coin for the edge leaving (x, y) in the given direction
+    static boolean coin(long seed, int x, int y, int dir)
+    {
+        return EdgeWeights.hash(seed, x, y, dir) < 0;
+    }
+    static long hash(long seed, int x, int y, int dir)
+    {
+        long position = ((long) y << 32) | (x & 0xffffffffL);
+        return EdgeWeights.mix(seed + EdgeWeights.mix(position) + dir * GOLDEN);
+    }
+    static long mix(long z) // the SplitMix64 finaliser
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
+
+//generates a MazeGrid with Kruskal's algorithm in time linear in the number of cells:
+//edge weights are bounded by Maze.EDGE_WEIGHTS, so a counting order replaces the sort and
+//one pass over that order builds the spanning tree; every edge it skips stays a wall.
+//the working buffers are kept between calls so generating many mazes does not reallocate
+class KruskalGenerator
+{
+    static final int MAX_CELLS = Integer.MAX_VALUE / 2; // every cell owns two edge slots
+
+    byte[] weights = new byte[0]; // candidate edge weights, indexed by 2 * cell (+1 for down)
+    int[] order = new int[0]; // candidate edges in ascending weight order
+    DisjointSet forest = new DisjointSet(0); // union/find over the cells
+    final int[] starts = new int[Maze.EDGE_WEIGHTS + 1]; // where each weight's edges start in order
+    long weightsNanos; // how long the last carve spent drawing and counting the edge weights
+    long orderNanos; // putting the edges in weight order
+    long unionNanos; // cutting the spanning tree out of them
+
+    // the same seed gives the same maze as a Maze built from it
+    MazeGrid generate(int width, int height, long seed)
+    {
+        if ((long) width * height > MAX_CELLS)
+        {
+            throw new IllegalArgumentException("maze too large: " + width + "x" + height);
+        }
+        MazeGrid maze = new MazeGrid(width, height);
+        this.generate(maze, seed);
+        return maze;
+    }
+    // carves the maze for a seed into a grid that may hold an older maze, the same maze the
+    // other generate makes; once the buffers have grown to the grid's size this allocates nothing
+    void generate(MazeGrid maze, long seed)
+    {
+        if ((long) maze.width * maze.height > MAX_CELLS)
+        {
+            throw new IllegalArgumentException("maze too large: " + maze.width + "x" + maze.height);
+        }
+        maze.clear();
+        maze.seed = seed;
+        this.carve(maze, 0, 0, maze.width, maze.height, false);
+    }
+
+    // carves a spanning tree into the width x height rectangle of the maze whose top left cell
+    // is (left, top); shared is true when other threads are carving other rectangles of it
+    void carve(MazeGrid maze, int left, int top, int width, int height, boolean shared)
+    {
+        int cells = width * height;
+        if (this.order.length < 2 * cells)
+        {
+            this.weights = new byte[2 * cells];
+            this.order = new int[2 * cells];
+        }
+        // draw a weight for every edge inside the grid and count how many fall in each bucket
+        long start = System.nanoTime();
+        int[] starts = this.starts;
+        Arrays.fill(starts, 0);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int cell = y * width + x;
+                if (x < width - 1)
+                {
+                    int w = EdgeWeights.weight(maze.seed, left + x, top + y, MazeGrid.RIGHT);
+                    this.weights[2 * cell] = (byte) w;
+                    starts[w + 1]++;
+                }
+                if (y < height - 1)
+                {
+                    int w = EdgeWeights.weight(maze.seed, left + x, top + y, MazeGrid.DOWN);
+                    this.weights[2 * cell + 1] = (byte) w;
+                    starts[w + 1]++;
+                }
+            }
+        }
+        long weighed = System.nanoTime();
+        for (int w = 0; w < Maze.EDGE_WEIGHTS; w++)
+        {
+            starts[w + 1] += starts[w];
+        }
+        int edges = starts[Maze.EDGE_WEIGHTS];
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int cell = y * width + x;
+                if (x < width - 1)
+                {
+                    this.order[starts[this.weights[2 * cell]]++] = 2 * cell;
+                }
+                if (y < height - 1)
+                {
+                    this.order[starts[this.weights[2 * cell + 1]]++] = 2 * cell + 1;
+                }
+            }
+        }
+        // cut every edge that joins two separate trees, stopping once the tree spans the grid
+        long ordered = System.nanoTime();
+        this.forest.reset(cells);
+        for (int k = 0; k < edges && this.forest.components() > 1; k++)
+        {
+            int edge = this.order[k];
+            int cell = edge >>> 1;
+            int dir = MazeGrid.RIGHT;
+            if ((edge & 1) != 0)
+            {
+                dir = MazeGrid.DOWN;
+            }
+            if (this.forest.union(cell, MazeGrid.step(cell, dir, width)))
+            {
+                int global = maze.index(left + cell % width, top + cell / width);
+                if (shared)
+                {
+                    maze.openAtomic(global, dir);
+                }
+                else
+                {
+                    maze.open(global, dir);
+                }
+            }
+        }
+        this.weightsNanos = weighed - start;
+        this.orderNanos = ordered - weighed;
+        this.unionNanos = System.nanoTime() - ordered;
+    }
+}
+
+//generates a MazeGrid in parallel on a ForkJoinPool. the grid is cut into square tiles and
+//each tile gets its own Kruskal spanning tree; a tile's tree connects the whole tile, so a
+//last Kruskal pass over the edges between tiles only needs one union/find element per tile.
+//the result is still a perfect maze. edge weights come from EdgeWeights and the tile size is
+//fixed, so a seed gives the same maze however many threads ran; it is not the maze
+//KruskalGenerator builds from that seed, since no passage crosses a tile border unless needed
+class TiledGenerator
+{
+    static final int TILE_SIZE = 256;
+    static final int TILES_PER_TASK = 4; // tiles a single task carves before it stops splitting
+
+    final ForkJoinPool pool;
+    final int tileSize;
+
+    TiledGenerator(ForkJoinPool pool)
+    {
+        this(pool, TILE_SIZE);
+    }
+    TiledGenerator(ForkJoinPool pool, int tileSize)
+    {
+        this.pool = pool;
+        this.tileSize = tileSize;
+    }
+
+    MazeGrid generate(int width, int height, long seed)
+    {
+        MazeGrid maze = new MazeGrid(width, height);
+        maze.seed = seed;
+        int across = (width + this.tileSize - 1) / this.tileSize;
+        int down = (height + this.tileSize - 1) / this.tileSize;
+        this.pool.invoke(new TileTask(this, maze, across, 0, across * down));
+        this.stitch(maze, across);
+        return maze;
+    }
+
+    // carves one tile
+    void carveTile(KruskalGenerator generator, MazeGrid maze, int tile, int across)
+    {
+        int left = (tile % across) * this.tileSize;
+        int top = (tile / across) * this.tileSize;
+        int width = Math.min(this.tileSize, maze.width - left);
+        int height = Math.min(this.tileSize, maze.height - top);
+        generator.carve(maze, left, top, width, height, true);
+    }
+
+    // joins the tiles with Kruskal's algorithm over the edges that cross tile borders
+    void stitch(MazeGrid maze, int across)
+    {
+        int size = this.tileSize;
+        // the right edges of each tile's last column, then the down edges of each tile's last row
+        int edges = 0;
+        for (int x = size - 1; x < maze.width - 1; x += size)
+        {
+            edges += maze.height;
+        }
+        for (int y = size - 1; y < maze.height - 1; y += size)
+        {
+            edges += maze.width;
+        }
+        int[] cells = new int[edges];
+        boolean[] down = new boolean[edges];
+        byte[] weights = new byte[edges];
+        int[] starts = new int[Maze.EDGE_WEIGHTS + 1];
+        int k = 0;
+        for (int x = size - 1; x < maze.width - 1; x += size)
+        {
+            for (int y = 0; y < maze.height; y++)
+            {
+                cells[k] = maze.index(x, y);
+                k++;
+            }
+        }
+        for (int y = size - 1; y < maze.height - 1; y += size)
+        {
+            for (int x = 0; x < maze.width; x++)
+            {
+                cells[k] = maze.index(x, y);
+                down[k] = true;
+                k++;
+            }
+        }
+        for (int i = 0; i < edges; i++)
+        {
+            int dir = MazeGrid.RIGHT;
+            if (down[i])
+            {
+                dir = MazeGrid.DOWN;
+            }
+            int w = EdgeWeights.weight(maze.seed, maze.xOf(cells[i]), maze.yOf(cells[i]), dir);
+            weights[i] = (byte) w;
+            starts[w + 1]++;
+        }
+        for (int w = 0; w < Maze.EDGE_WEIGHTS; w++)
+        {
+            starts[w + 1] += starts[w];
+        }
+        int[] order = new int[edges];
+        for (int i = 0; i < edges; i++)
+        {
+            order[starts[weights[i]]++] = i;
+        }
+        DisjointSet tiles = new DisjointSet((maze.height + size - 1) / size * across);
+        for (int i = 0; i < edges && tiles.components() > 1; i++)
+        {
+            int cell = cells[order[i]];
+            int dir = MazeGrid.RIGHT;
+            if (down[order[i]])
+            {
+                dir = MazeGrid.DOWN;
+            }
+            int other = MazeGrid.step(cell, dir, maze.width);
+            if (tiles.union(this.tileOf(maze, cell, across), this.tileOf(maze, other, across)))
+            {
+                maze.open(cell, dir);
+            }
+        }
+    }
+    int tileOf(MazeGrid maze, int cell, int across)
+    {
+        return (maze.yOf(cell) / this.tileSize) * across + maze.xOf(cell) / this.tileSize;
+    }
+}
+
+//carves a range of tiles for a TiledGenerator, splitting the range in half until it is small
+class TileTask extends RecursiveAction
+{
+    private static final long serialVersionUID = 1L; // never serialized, like every ForkJoinTask here
+
+    final transient TiledGenerator generator;
+    final transient MazeGrid maze;
+    final int across; // tiles in a row
+    final int from; // the first tile
+    final int to; // one past the last tile
+
+    TileTask(TiledGenerator generator, MazeGrid maze, int across, int from, int to)
+    {
+        this.generator = generator;
+        this.maze = maze;
+        this.across = across;
+        this.from = from;
+        this.to = to;
+    }
+
+    protected void compute()
+    {
+        if (this.to - this.from <= TiledGenerator.TILES_PER_TASK)
+        {
+            KruskalGenerator kruskal = new KruskalGenerator(); // its buffers are shared by the tiles
+            for (int tile = this.from; tile < this.to; tile++)
+            {
+                this.generator.carveTile(kruskal, this.maze, tile, this.across);
+            }
+        }
+        else
+        {
+            int middle = (this.from + this.to) >>> 1;
+            ForkJoinTask.invokeAll(new TileTask(this.generator, this.maze, this.across, this.from, middle),
+                                   new TileTask(this.generator, this.maze, this.across, middle, this.to));
+        }
+    }
+}
+
+//generates a perfect maze one row at a time with Eller's algorithm. only the current row's
+//sets are kept, so memory is O(width) however tall the maze is, and each finished row goes
+//straight to a RowSink
+class EllerGenerator
+{
+    final int width;
+    final long seed; // every coin the generator flips comes from EdgeWeights.coin with this seed
+    final int[] labels; // the set of each cell in the current row; below width for sets carried down
+    final int[] carried; // compact label for each set root carried into the next row, -1 if none yet
+    final int[] lastCell; // the last cell of each set root in the current row
+    final boolean[] goesDown; // has the set root got a passage down yet
+    final boolean[] openRight;
+    final boolean[] openDown;
+    final DisjointSet sets; // the sets of the current row, labels [0, 2 * width)
+
+    EllerGenerator(int width, long seed)
+    {
+        this.width = width;
+        this.seed = seed;
+        this.labels = new int[width];
+        this.carried = new int[2 * width];
+        this.lastCell = new int[2 * width];
+        this.goesDown = new boolean[2 * width];
+        this.openRight = new boolean[width];
+        this.openDown = new boolean[width];
+        this.sets = new DisjointSet(2 * width);
+    }
+
+    // streams a maze of the given height into the sink, top row first
+    void generate(int height, RowSink sink) throws IOException
+    {
+        Arrays.fill(this.labels, -1);
+        for (int y = 0; y < height; y++)
+        {
+            this.makeRow(y, y == height - 1);
+            sink.row(y, this.openRight, this.openDown);
+        }
+    }
+
+    // decides the passages of the current row and carries its sets down to the next one
+    void makeRow(int y, boolean last)
+    {
+        int w = this.width;
+        this.sets.reset(2 * w);
+        for (int x = 0; x < w; x++)
+        {
+            if (this.labels[x] < 0) // cells not joined from above start a set of their own
+            {
+                this.labels[x] = w + x;
+            }
+        }
+        // join neighbouring cells at random, and always on the last row so everything meets
+        for (int x = 0; x < w - 1; x++)
+        {
+            this.openRight[x] = false;
+            if (!this.sets.connected(this.labels[x], this.labels[x + 1]) && (last || EdgeWeights.coin(this.seed, x, y, MazeGrid.RIGHT)))
+            {
+                this.sets.union(this.labels[x], this.labels[x + 1]);
+                this.openRight[x] = true;
+            }
+        }
+        this.openRight[w - 1] = false;
+        if (last)
+        {
+            Arrays.fill(this.openDown, false);
+            return;
+        }
+        // every set needs at least one passage down or it would be cut off from the rows below
+        for (int x = 0; x < w; x++)
+        {
+            int root = this.sets.find(this.labels[x]);
+            this.goesDown[root] = false;
+            this.carried[root] = -1;
+            this.lastCell[root] = x;
+        }
+        for (int x = 0; x < w; x++)
+        {
+            int root = this.sets.find(this.labels[x]);
+            this.openDown[x] = EdgeWeights.coin(this.seed, x, y, MazeGrid.DOWN)
+                               || (this.lastCell[root] == x && !this.goesDown[root]);
+            if (this.openDown[x])
+            {
+                this.goesDown[root] = true;
+            }
+        }
+        // give the sets that continue downward compact labels for the next row
+        int next = 0;
+        for (int x = 0; x < w; x++)
+        {
+            int root = this.sets.find(this.labels[x]);
+            this.labels[x] = -1;
+            if (this.openDown[x])
+            {
+                if (this.carried[root] < 0)
+                {
+                    this.carried[root] = next;
+                    next++;
+                }
+                this.labels[x] = this.carried[root];
+            }
+        }
+    }
+}
+
+//writes a maze as a PNG without a window and without the whole picture in memory: the walls,
+//the marks of a run (cells it expanded and the path it found) and, if asked, a line along
+//every passage, drawn the way makeImage draws them. the picture is cut into bands of whole
+//cell rows, and each band is drawn and deflated by its own task into a piece of one zlib
+//stream: every band but the last ends on a sync flush, so the pieces can simply be written
+//one after the other, and the checksum of the whole is put together from the bands' own.
+//only a few bands are in flight at once, so memory depends on the width, not the height.
+//pixels are palette indices of four bits. all the pixel rows inside a cell row are alike
+//apart from the few the passage lines cross, so each row is stored as its difference from
+//the row above, which is nothing but zeros most of the time and deflates to almost nothing
+class PngExporter
+{
+    static final String USAGE = "usage: java PngExporter [width] [height] [cell size] [threads] [file]";
+    static final int BAND_BYTES = 1 << 24; // about how many bytes of pixel rows go in one band
+    static final int BACKGROUND = 0; // the palette
+    static final int WALL = 1;
+    static final int EXPANDED = 2;
+    static final int ON_PATH = 3;
+    static final int PASSAGE = 4;
+    static final Color[] PALETTE = {Maze.BACKGROUND_COLOR, Maze.WALL_COLOR, Color.CYAN,
+                                    Color.BLUE, Maze.PATH_COLOR};
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    static final int NONE = 0; // the PNG row filters used
+    static final int UP = 2;
+
+    final MazeGrid maze;
+    final byte[] marks; // GridSearch marks for each cell, or null for none
+    final int cellSize;
+    final int threads;
+    final int width; // in pixels
+    final int height;
+    final int rowBytes; // bytes in a row of pixels, not counting its filter byte
+    int bandRows; // cell rows in a band
+    boolean passages; // draw a line along every passage, as the q key does
+    int level = Deflater.BEST_SPEED;
+
+    PngExporter(MazeGrid maze, byte[] marks, int cellSize, int threads)
+    {
+        if (cellSize < 2 || threads < 1)
+        {
+            throw new IllegalArgumentException("cells must be at least two pixels, with a thread to draw them");
+        }
+        if ((long) maze.width * cellSize >= Integer.MAX_VALUE
+            || (long) maze.height * cellSize >= Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("a " + maze.width + "x" + maze.height + " maze at "
+                                               + cellSize + " pixels a cell is too big for a PNG");
+        }
+        this.maze = maze;
+        this.marks = marks;
+        this.cellSize = cellSize;
+        this.threads = threads;
+        this.width = maze.width * cellSize + 1;
+        this.height = maze.height * cellSize + 1;
+        this.rowBytes = (this.width + 1) / 2;
+        this.bandRows = (int) Math.max(1, BAND_BYTES / ((long) this.rowBytes * cellSize));
+    }
+
+    // java PngExporter [width] [height] [cell size] [threads] [file] generates a maze, solves it
+    // breadth first and writes it out
+    public static void main(String[] args) throws IOException
+    {
+        int width = 4096;
+        int height = 4096;
+        int cellSize = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String file = "maze.png";
+        if (args.length == 1) // a width without a height
+        {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (args.length > 1)
+        {
+            width = Integer.parseInt(args[0]);
+            height = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2)
+        {
+            cellSize = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3)
+        {
+            threads = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4)
+        {
+            file = args[4];
+        }
+        MazeGrid maze = new KruskalGenerator().generate(width, height, new Random().nextLong());
+        GridSearch search = GridSearch.solve("bfs", maze);
+        search.markPath();
+        long start = System.nanoTime();
+        PngExporter exporter = new PngExporter(maze, search.marks, cellSize, threads);
+        exporter.write(Paths.get(file));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%dx%d pixels in %.2f s, %.3g pixels/s, %d bytes",
+                                         exporter.width, exporter.height, seconds,
+                                         (double) exporter.width * exporter.height / seconds,
+                                         Files.size(Paths.get(file))));
+    }
+
+    void write(Path path) throws IOException
+    {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))
+        {
+            this.write(out);
+        }
+    }
+    void write(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(this.width).putInt(this.height);
+        header.put((byte) 4).put((byte) 3); // four bits a pixel, indexed colour
+        header.put((byte) 0).put((byte) 0).put((byte) 0); // deflate, the usual filters, no interlace
+        PngExporter.chunk(data, "IHDR", header.array(), 13);
+        byte[] palette = new byte[3 * PALETTE.length];
+        for (int i = 0; i < PALETTE.length; i++)
+        {
+            palette[3 * i] = (byte) PALETTE[i].getRed();
+            palette[3 * i + 1] = (byte) PALETTE[i].getGreen();
+            palette[3 * i + 2] = (byte) PALETTE[i].getBlue();
+        }
+        PngExporter.chunk(data, "PLTE", palette, palette.length);
+        PngExporter.chunk(data, "IDAT", new byte[] {0x78, (byte) 0x9c}, 2); // the zlib header
+        int bands = (this.maze.height + this.bandRows - 1) / this.bandRows;
+        long adler = 1;
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try
+        {
+            ArrayDeque<Future<PngBand>> pending = new ArrayDeque<Future<PngBand>>();
+            int next = 0;
+            for (int b = 0; b < bands; b++)
+            {
+                while (next < bands && pending.size() < 2 * this.threads)
+                {
+                    int from = next * this.bandRows;
+                    int to = Math.min(from + this.bandRows, this.maze.height);
+                    pending.add(pool.submit(new PngBand(this, from, to, next == bands - 1)));
+                    next++;
+                }
+                PngBand band = PngExporter.await(pending.poll());
+                PngExporter.chunk(data, "IDAT", band.out, band.size);
+                adler = PngExporter.combine(adler, band.adler.getValue(), band.length);
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        PngExporter.chunk(data, "IDAT", ByteBuffer.allocate(4).putInt((int) adler).array(), 4);
+        PngExporter.chunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+    static PngBand await(Future<PngBand> band) throws IOException
+    {
+        try
+        {
+            return band.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing a PNG");
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("could not draw a band of the PNG", e.getCause());
+        }
+    }
+    // writes a chunk: its length, type, data and the CRC of the type and data
+    static void chunk(DataOutputStream out, String type, byte[] data, int length) throws IOException
+    {
+        byte[] name = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+    // the Adler-32 of two pieces of data one after the other, from the checksums of each and
+    // the length of the second, the way zlib's adler32_combine works it out
+    static long combine(long first, long second, long length)
+    {
+        final long base = 65521;
+        long remainder = length % base;
+        long sum1 = first & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (second & 0xffff) + base - 1;
+        sum2 += ((first >>> 16) & 0xffff) + ((second >>> 16) & 0xffff) + base - remainder;
+        sum1 %= base;
+        sum2 %= base;
+        return (sum2 << 16) | sum1;
+    }
+
+    // the palette colour for a cell's mark
+    int colorOf(int x, int y)
+    {
+        if (this.marks == null)
+        {
+            return BACKGROUND;
+        }
+        byte mark = this.marks[this.maze.index(x, y)];
+        if (mark == GridSearch.ON_PATH)
+        {
+            return ON_PATH;
+        }
+        if (mark == GridSearch.EXPANDED)
+        {
+            return EXPANDED;
+        }
+        return BACKGROUND;
+    }
+    // the colour of the gap between two cells with no wall between them
+    int colorBetween(int x1, int y1, int x2, int y2)
+    {
+        int color = this.colorOf(x1, y1);
+        if (color == this.colorOf(x2, y2))
+        {
+            return color;
+        }
+        return BACKGROUND;
+    }
+    // is there a wall along the top of the cell at (x, y); y may be the height, for the bottom
+    boolean wallAbove(int x, int y)
+    {
+        if (x < 0 || x >= this.maze.width)
+        {
+            return false;
+        }
+        return y == 0 || y == this.maze.height || !this.maze.isOpen(this.maze.index(x, y), MazeGrid.UP);
+    }
+    // is there a wall along the left of the cell at (x, y); x may be the width, for the right
+    boolean wallLeftOf(int x, int y)
+    {
+        if (y < 0 || y >= this.maze.height)
+        {
+            return false;
+        }
+        return x == 0 || x == this.maze.width || !this.maze.isOpen(this.maze.index(x, y), MazeGrid.LEFT);
+    }
+    // which of the rows inside a cell row a pixel row is; rows of the same kind look alike
+    int kindOf(int row)
+    {
+        int middle = this.cellSize / 2;
+        if (row == 0)
+        {
+            return 0; // the walls along the tops of the cells
+        }
+        if (row < middle)
+        {
+            return 1; // above the passage lines
+        }
+        if (row == middle)
+        {
+            return 2; // the passage lines across
+        }
+        return 3; // below them
+    }
+    // draws a row of the given kind for cell row y into one palette index a pixel
+    void draw(int y, int kind, byte[] pixels)
+    {
+        int size = this.cellSize;
+        int middle = size / 2;
+        for (int x = 0; x <= this.maze.width; x++)
+        {
+            int left = x * size;
+            if (kind == 0)
+            {
+                boolean post = this.wallAbove(x - 1, y) || this.wallAbove(x, y)
+                    || this.wallLeftOf(x, y - 1) || this.wallLeftOf(x, y);
+                pixels[left] = (byte) (post ? WALL : BACKGROUND);
+            }
+            else if (this.wallLeftOf(x, y))
+            {
+                pixels[left] = WALL;
+            }
+            else
+            {
+                pixels[left] = (byte) this.colorBetween(x - 1, y, x, y);
+            }
+            if (x == this.maze.width)
+            {
+                break;
+            }
+            int color;
+            if (kind == 0 && this.wallAbove(x, y))
+            {
+                color = WALL;
+            }
+            else if (kind == 0)
+            {
+                color = this.colorBetween(x, y - 1, x, y);
+            }
+            else
+            {
+                color = this.colorOf(x, y);
+            }
+            Arrays.fill(pixels, left + 1, left + size, (byte) color);
+            if (!this.passages || y == this.maze.height)
+            {
+                continue;
+            }
+            int cell = this.maze.index(x, y);
+            if ((kind < 2 && this.maze.isOpen(cell, MazeGrid.UP))
+                || (kind == 3 && this.maze.isOpen(cell, MazeGrid.DOWN)))
+            {
+                pixels[left + middle] = PASSAGE;
+            }
+            if (kind == 2)
+            {
+                int from = left + middle;
+                int to = left + middle;
+                if (this.maze.isOpen(cell, MazeGrid.LEFT))
+                {
+                    from = left;
+                }
+                if (this.maze.isOpen(cell, MazeGrid.RIGHT))
+                {
+                    to = left + size - 1;
+                }
+                Arrays.fill(pixels, from, to + 1, (byte) PASSAGE);
+            }
+        }
+    }
+}
+
+//draws and deflates one band of a PngExporter's picture
+class PngBand implements Callable<PngBand>
+{
+    final PngExporter exporter;
+    final int from; // the first cell row
+    final int to; // one past the last cell row
+    final boolean last; // is this the bottom band, which also draws the bottom wall and ends the stream
+    Deflater deflater;
+    final Adler32 adler = new Adler32();
+    byte[] out = new byte[1 << 12]; // the band's piece of the zlib stream
+    int size;
+    long length; // bytes of filtered rows the piece holds
+
+    PngBand(PngExporter exporter, int from, int to, boolean last)
+    {
+        this.exporter = exporter;
+        this.from = from;
+        this.to = to;
+        this.last = last;
+    }
+
+    public PngBand call()
+    {
+        PngExporter e = this.exporter;
+        this.deflater = new Deflater(e.level, true); // raw deflate, the zlib wrapper is the exporter's
+        byte[] pixels = new byte[e.width + 1];
+        byte[] row = new byte[e.rowBytes + 1];
+        byte[] above = new byte[e.rowBytes + 1];
+        byte[] difference = new byte[e.rowBytes + 1];
+        byte[] same = new byte[e.rowBytes + 1]; // the difference between two rows that are alike
+        same[0] = PngExporter.UP;
+        difference[0] = PngExporter.UP;
+        boolean first = true;
+        int end = this.to;
+        if (this.last)
+        {
+            end++;
+        }
+        try
+        {
+            for (int y = this.from; y < end; y++)
+            {
+                int rows = e.cellSize;
+                if (y == e.maze.height)
+                {
+                    rows = 1; // the bottom wall
+                }
+                int kind = -1;
+                for (int r = 0; r < rows; r++)
+                {
+                    if (e.kindOf(r) == kind)
+                    {
+                        this.feed(same);
+                        continue;
+                    }
+                    kind = e.kindOf(r);
+                    e.draw(y, kind, pixels);
+                    for (int i = 0; i < e.rowBytes; i++)
+                    {
+                        row[i + 1] = (byte) ((pixels[2 * i] << 4) | pixels[2 * i + 1]);
+                    }
+                    if (first)
+                    {
+                        row[0] = PngExporter.NONE;
+                        this.feed(row);
+                        first = false;
+                    }
+                    else
+                    {
+                        for (int i = 1; i <= e.rowBytes; i++)
+                        {
+                            difference[i] = (byte) (row[i] - above[i]);
+                        }
+                        this.feed(difference);
+                    }
+                    byte[] swap = above;
+                    above = row;
+                    row = swap;
+                }
+            }
+            if (this.last)
+            {
+                this.deflater.finish();
+                while (!this.deflater.finished())
+                {
+                    this.deflate(Deflater.NO_FLUSH);
+                }
+            }
+            else
+            {
+                // a sync flush ends the piece on a byte boundary without ending the stream
+                while (this.deflate(Deflater.SYNC_FLUSH) == 0)
+                {
+                    // the buffer filled up, so there may be more
+                }
+            }
+        }
+        finally
+        {
+            this.deflater.end();
+        }
+        return this;
+    }
+    void feed(byte[] filtered)
+    {
+        this.adler.update(filtered, 0, filtered.length);
+        this.length += filtered.length;
+        this.deflater.setInput(filtered, 0, filtered.length);
+        while (!this.deflater.needsInput())
+        {
+            this.deflate(Deflater.NO_FLUSH);
+        }
+    }
+    // deflates into the buffer, growing it if it is full; returns the space left after
+    int deflate(int flush)
+    {
+        if (this.size == this.out.length)
+        {
+            this.out = Arrays.copyOf(this.out, this.out.length * 2);
+        }
+        this.size += this.deflater.deflate(this.out, this.size, this.out.length - this.size, flush);
+        return this.out.length - this.size;
+    }
+}
+
+//receives a maze one row at a time
+interface RowSink
+{
+    // openRight[x] is true when the passage from (x, y) to (x + 1, y) is open and openDown[x]
+    // when the passage from (x, y) to (x, y + 1) is; the arrays are reused for the next row
+    void row(int y, boolean[] openRight, boolean[] openDown) throws IOException;
+}
+
+//copies streamed rows into a MazeGrid
+class GridRowSink implements RowSink
+{
+    final MazeGrid maze;
+
+    GridRowSink(MazeGrid maze)
+    {
+        this.maze = maze;
+    }
+
+    public void row(int y, boolean[] openRight, boolean[] openDown)
+    {
+        for (int x = 0; x < this.maze.width; x++)
+        {
+            int cell = this.maze.index(x, y);
+            if (openRight[x])
+            {
+                this.maze.open(cell, MazeGrid.RIGHT);
+            }
+            if (openDown[x])
+            {
+                this.maze.open(cell, MazeGrid.DOWN);
+            }
+        }
+    }
+}
+
+//writes streamed rows to an output stream in the maze file format, so a streamed maze can
+//be opened with MazeFile.load
+class PackedRowWriter implements RowSink
+{
+    final DataOutputStream out;
+    final int width;
+    final int height;
+    long word; // bits waiting to be written
+    int filled; // how many bits of word are in use
+
+    PackedRowWriter(OutputStream out, int width, int height, long seed) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.width = width;
+        this.height = height;
+        this.out.write(MazeFile.header(width, height, seed).array());
+    }
+
+    public void row(int y, boolean[] openRight, boolean[] openDown) throws IOException
+    {
+        for (int x = 0; x < this.width; x++)
+        {
+            if (openRight[x])
+            {
+                this.word |= 1L << this.filled;
+            }
+            if (openDown[x])
+            {
+                this.word |= 2L << this.filled;
+            }
+            this.filled += 2;
+            if (this.filled == 64)
+            {
+                this.out.writeLong(Long.reverseBytes(this.word));
+                this.word = 0;
+                this.filled = 0;
+            }
+        }
+        if (y == this.height - 1)
+        {
+            if (this.filled > 0)
+            {
+                this.out.writeLong(Long.reverseBytes(this.word));
+            }
+            this.out.flush();
+        }
+    }
+}
+
+//a maze with no edges, made of square chunks that are generated when something first looks
+//at them. each chunk is a perfect maze of its own, carved by a KruskalGenerator from a seed
+//hashed from the maze's seed and the chunk's position, and every pair of neighbouring chunks
+//is joined by one door at a position hashed the same way, so both sides of a border always
+//agree and any chunk can be thrown away and built again exactly as it was. the chunks live in
+//an access ordered LinkedHashMap that drops the least recently used one past its capacity, so
+//memory stays the same however far the maze is explored. cells are addressed by global int
+//coordinates, which may be negative. not safe for use from several threads
+class ChunkedMaze
+{
+    static final int CHUNK_SIZE = 64;
+    static final int CAPACITY = 256; // chunks kept, 256 KB of walls at the default size (1 KB a chunk)
+
+    final long seed;
+    final int chunkSize;
+    final int capacity;
+    final KruskalGenerator generator = new KruskalGenerator();
+    final LinkedHashMap<Long, MazeGrid> chunks;
+    long generated; // chunks built, including ones built again after being dropped
+
+    ChunkedMaze(long seed)
+    {
+        this(seed, CHUNK_SIZE, CAPACITY);
+    }
+    ChunkedMaze(long seed, int chunkSize, final int capacity)
+    {
+        if (chunkSize < 1 || capacity < 1)
+        {
+            throw new IllegalArgumentException("chunk size and capacity must be positive");
+        }
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.capacity = capacity;
+        this.chunks = new LinkedHashMap<Long, MazeGrid>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Long, MazeGrid> eldest)
+            {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    // packs global coordinates into one long, the way cells are named in paths
+    static long pack(int x, int y)
+    {
+        return ((long) y << 32) | (x & 0xffffffffL);
+    }
+    static int xOf(long cell)
+    {
+        return (int) cell;
+    }
+    static int yOf(long cell)
+    {
+        return (int) (cell >> 32);
+    }
+
+    // the chunk at chunk coordinates (cx, cy), built if it is not in the cache
+    MazeGrid chunk(int cx, int cy)
+    {
+        Long key = ChunkedMaze.pack(cx, cy);
+        MazeGrid chunk = this.chunks.get(key);
+        if (chunk == null)
+        {
+            long chunkSeed = EdgeWeights.hash(this.seed, cx, cy, 4); // 4 is no direction, so no door
+            chunk = this.generator.generate(this.chunkSize, this.chunkSize, chunkSeed);
+            this.generated++;
+            this.chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+    // where along the border on the given side, RIGHT or DOWN, of chunk (cx, cy) its door is
+    int door(int cx, int cy, int dir)
+    {
+        long h = EdgeWeights.hash(this.seed, cx, cy, dir);
+        return (int) (((h >>> 32) * this.chunkSize) >>> 32);
+    }
+    // is there a passage from the cell at (x, y) in the given direction
+    boolean isOpen(int x, int y, int dir)
+    {
+        int cx = Math.floorDiv(x, this.chunkSize);
+        int cy = Math.floorDiv(y, this.chunkSize);
+        int lx = x - cx * this.chunkSize;
+        int ly = y - cy * this.chunkSize;
+        int last = this.chunkSize - 1;
+        if (dir == MazeGrid.RIGHT && lx == last)
+        {
+            return ly == this.door(cx, cy, MazeGrid.RIGHT);
+        }
+        if (dir == MazeGrid.LEFT && lx == 0)
+        {
+            return ly == this.door(cx - 1, cy, MazeGrid.RIGHT);
+        }
+        if (dir == MazeGrid.DOWN && ly == last)
+        {
+            return lx == this.door(cx, cy, MazeGrid.DOWN);
+        }
+        if (dir == MazeGrid.UP && ly == 0)
+        {
+            return lx == this.door(cx, cy - 1, MazeGrid.DOWN);
+        }
+        MazeGrid chunk = this.chunk(cx, cy);
+        return chunk.isOpen(chunk.index(lx, ly), dir);
+    }
+    // the cell next to this one in the given direction
+    static long step(long cell, int dir)
+    {
+        int x = ChunkedMaze.xOf(cell);
+        int y = ChunkedMaze.yOf(cell);
+        switch (dir)
+        {
+            case MazeGrid.UP:
+                return ChunkedMaze.pack(x, y - 1);
+            case MazeGrid.RIGHT:
+                return ChunkedMaze.pack(x + 1, y);
+            case MazeGrid.DOWN:
+                return ChunkedMaze.pack(x, y + 1);
+            default:
+                return ChunkedMaze.pack(x - 1, y);
+        }
+    }
+    // a shortest path of packed cells from one cell to another by breadth first search, giving
+    // up after limit cells; null if it gave up. chunks are built as the search reaches them,
+    // and the search's own bookkeeping grows with the cells it expands. the parents are a
+    // LongLongMap and the frontier a ring of longs, so no cell is boxed
+    long[] path(long from, long to, int limit)
+    {
+        LongLongMap parents = new LongLongMap();
+        long[] queue = new long[64]; // a ring, always a power of two long
+        int head = 0; // where the next cell to expand is
+        int queued = 0;
+        parents.putIfAbsent(from, from);
+        queue[0] = from;
+        queued++;
+        int expanded = 0;
+        while (queued > 0 && !parents.containsKey(to) && expanded < limit)
+        {
+            long current = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            queued--;
+            expanded++;
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                if (this.isOpen(ChunkedMaze.xOf(current), ChunkedMaze.yOf(current), dir))
+                {
+                    long next = ChunkedMaze.step(current, dir);
+                    if (parents.putIfAbsent(next, current))
+                    {
+                        if (queued == queue.length) // unwrap into a ring twice as long
+                        {
+                            long[] larger = new long[queue.length * 2];
+                            System.arraycopy(queue, head, larger, 0, queue.length - head);
+                            System.arraycopy(queue, 0, larger, queue.length - head, head);
+                            queue = larger;
+                            head = 0;
+                        }
+                        queue[(head + queued) & (queue.length - 1)] = next;
+                        queued++;
+                    }
+                }
+            }
+        }
+        if (!parents.containsKey(to))
+        {
+            return null;
+        }
+        int length = 1;
+        for (long cell = to; cell != from; cell = parents.get(cell))
+        {
+            length++;
+        }
+        long[] path = new long[length];
+        long cell = to;
+        for (int i = length - 1; i > 0; i--)
+        {
+            path[i] = cell;
+            cell = parents.get(cell);
+        }
+        path[0] = from;
+        return path;
+    }
+}
+
+//a hash map from long to long that keeps its keys and values in flat arrays rather than
+//boxing them: open addressing with linear probing over a power of two table that doubles
+//once it is half full. every long is a valid key, so which slots are in use is kept apart.
+//there is no removal, which keeps probing simple
+class LongLongMap
+{
+    long[] keys;
+    long[] values;
+    boolean[] used;
+    int size;
+
+    LongLongMap()
+    {
+        this(16);
+    }
+
+    LongLongMap(int capacity) // rounded up to a power of two
+    {
+        int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.keys = new long[slots];
+        this.values = new long[slots];
+        this.used = new boolean[slots];
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+    boolean containsKey(long key)
+    {
+        return this.used[this.slot(key)];
+    }
+    // the value for the key, which must be in the map
+    long get(long key)
+    {
+        int slot = this.slot(key);
+        if (!this.used[slot])
+        {
+            throw new NoSuchElementException("no value for " + key);
+        }
+        return this.values[slot];
+    }
+    // maps the key to the value unless the key is already in the map; true if it was added
+    boolean putIfAbsent(long key, long value)
+    {
+        int slot = this.slot(key);
+        if (this.used[slot])
+        {
+            return false;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.used[slot] = true;
+        this.size++;
+        if (2 * this.size > this.keys.length)
+        {
+            this.grow();
+        }
+        return true;
+    }
+    // the slot that holds the key, or the empty slot where it would go
+    int slot(long key)
+    {
+        int mask = this.keys.length - 1;
+        int slot = (int) EdgeWeights.mix(key) & mask;
+        while (this.used[slot] && this.keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    void grow()
+    {
+        long[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new long[oldKeys.length * 2];
+        this.used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                int slot = this.slot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+                this.used[slot] = true;
+            }
+        }
+    }
+}
+
+//the player's view of a ChunkedMaze: a window of the maze centred on the player, who walks
+//with the arrow keys as far as they like. run with "java InfiniteMaze [seed]"
+class InfiniteMaze extends World
+{
+    static final int VIEW_WIDTH = Maze.MAZE_WIDTH; // cells across the window
+    static final int VIEW_HEIGHT = Maze.MAZE_HEIGHT;
+
+    final ChunkedMaze maze;
+    int x; // where the player is
+    int y;
+
+    InfiniteMaze(ChunkedMaze maze)
+    {
+        this.maze = maze;
+    }
+
+    public static void main(String[] args)
+    {
+        long seed = new Random().nextLong();
+        if (args.length > 0)
+        {
+            seed = Long.parseLong(args[0]);
+        }
+        new InfiniteMaze(new ChunkedMaze(seed)).bigBang(VIEW_WIDTH * Maze.CELL_SIZE + 1,
+                                                        VIEW_HEIGHT * Maze.CELL_SIZE + 1, 0.1);
+    }
+
+    public void onKeyEvent(String ke)
+    {
+        int dir = Maze.directionOf(ke);
+        if (dir >= 0 && this.maze.isOpen(this.x, this.y, dir))
+        {
+            long next = ChunkedMaze.step(ChunkedMaze.pack(this.x, this.y), dir);
+            this.x = ChunkedMaze.xOf(next);
+            this.y = ChunkedMaze.yOf(next);
+        }
+    }
+    // the window around the player, drawn from scratch since it moves with every step
+    public WorldImage makeImage()
+    {
+        WorldImage view = new RectangleImage(new Posn(0, 0), VIEW_WIDTH * Maze.CELL_SIZE,
+                                             VIEW_HEIGHT * Maze.CELL_SIZE, Maze.BACKGROUND_COLOR);
+        int left = this.x - VIEW_WIDTH / 2;
+        int top = this.y - VIEW_HEIGHT / 2;
+        view = view.overlayImages(new RectangleImage(
+                new Posn((VIEW_WIDTH / 2) * Maze.CELL_SIZE + Maze.CELL_SIZE / 2,
+                         (VIEW_HEIGHT / 2) * Maze.CELL_SIZE + Maze.CELL_SIZE / 2),
+                Maze.CELL_SIZE, Maze.CELL_SIZE, Color.BLUE));
+        for (int vy = 0; vy < VIEW_HEIGHT; vy++)
+        {
+            for (int vx = 0; vx < VIEW_WIDTH; vx++)
+            {
+                if (!this.maze.isOpen(left + vx, top + vy, MazeGrid.DOWN))
+                {
+                    view = view.overlayImages(Edge.wallBelow(vx, vy));
+                }
+                if (!this.maze.isOpen(left + vx, top + vy, MazeGrid.RIGHT))
+                {
+                    view = view.overlayImages(Edge.wallRightOf(vx, vy));
+                }
+                if (vy == 0 && !this.maze.isOpen(left + vx, top, MazeGrid.UP))
+                {
+                    view = view.overlayImages(Edge.wallBelow(vx, -1));
+                }
+                if (vx == 0 && !this.maze.isOpen(left, top + vy, MazeGrid.LEFT))
+                {
+                    view = view.overlayImages(Edge.wallRightOf(-1, vy));
+                }
+            }
+        }
+        return view;
+    }
+}
+
+//union/find over the ints [0, size) backed by primitive arrays: union by rank keeps the
+//trees shallow and find halves the path as it climbs, so every operation is close to
+//constant time. find is a loop rather than a recursion, so deep trees cannot overflow the stack
+class DisjointSet
+{
+    int[] parents = new int[0];
+    byte[] ranks = new byte[0]; // an upper bound on the height of each root's tree
+    int size;
+    int components;
+    long finds; // calls to find since the last reset
+    long findSteps; // parent links find followed since the last reset, to gauge tree depth
+
+    DisjointSet(int size)
+    {
+        this.reset(size);
+    }
+
+    // puts every element [0, size) back in a set of its own, reusing the arrays when they fit
+    void reset(int size)
+    {
+        if (this.parents.length < size)
+        {
+            this.parents = new int[size];
+            this.ranks = new byte[size];
+        }
+        for (int i = 0; i < size; i++)
+        {
+            this.parents[i] = i;
+            this.ranks[i] = 0;
+        }
+        this.size = size;
+        this.components = size;
+        this.finds = 0;
+        this.findSteps = 0;
+    }
+    // the representative of the set containing a
+    int find(int a)
+    {
+        this.finds++;
+        while (this.parents[a] != a)
+        {
+            this.parents[a] = this.parents[this.parents[a]];
+            a = this.parents[a];
+            this.findSteps++;
+        }
+        return a;
+    }
+    // joins the sets containing a and b, returning false if they were already joined;
+    // when both trees are the same height a's root is hung under b's
+    boolean union(int a, int b)
+    {
+        int rootA = this.find(a);
+        int rootB = this.find(b);
+        if (rootA == rootB)
+        {
+            return false;
+        }
+        if (this.ranks[rootA] > this.ranks[rootB])
+        {
+            this.parents[rootB] = rootA;
+        }
+        else
+        {
+            this.parents[rootA] = rootB;
+            if (this.ranks[rootA] == this.ranks[rootB])
+            {
+                this.ranks[rootB]++;
+            }
+        }
+        this.components--;
+        return true;
+    }
+    boolean connected(int a, int b)
+    {
+        return this.find(a) == this.find(b);
+    }
+    int components() // the number of disjoint sets
+    {
+        return this.components;
+    }
+    int size()
+    {
+        return this.size;
+    }
+}
+
+//the union/find data structure over Nodes, backed by a DisjointSet
+
+class UnionFind
+{
+    HashMap<Node, Integer> ids; // each node's element in the disjoint set
+    ArrayList<Node> members; // the node for each element
+    DisjointSet sets;
+    UnionFind(ArrayList<ArrayList<Node>> nodes) // takes in a 2D ArrayList of nodes
+    {
+        this.ids = new HashMap<Node, Integer>();
+        this.members = new ArrayList<Node>();
+        // double loop through the 2D list to get to all the nodes
+        for (ArrayList<Node> a: nodes)
+        {
+            for (Node n: a)
+            {
+                this.ids.put(n, this.members.size()); // give each node its own element
+                this.members.add(n);
+            }
+        }
+        this.sets = new DisjointSet(this.members.size());
+    }
+    public Node find(Node node)
+    {
+        // the head of the tree the node belongs to
+        return this.members.get(this.sets.find(this.ids.get(node)));
+    }
+    public void union(Node start, Node end)
+    {
+        this.sets.union(this.ids.get(start), this.ids.get(end));
+    }
+    public boolean connected(Node a, Node b)
+    {
+        return this.sets.connected(this.ids.get(a), this.ids.get(b));
+    }
+}
+//one benchmark in the MazeBenchmarks suite
+abstract class MazeBenchmark
+{
+    final String name;
+    final long bytesPerCell; // roughly how much heap each maze cell needs, so oversized runs can be skipped
+
+    MazeBenchmark(String name, long bytesPerCell)
+    {
+        this.name = name;
+        this.bytesPerCell = bytesPerCell;
+    }
+
+    // builds whatever the timed runs work on; not timed
+    void setUp(int width, int height)
+    {
+        // nothing to build
+    }
+    // the timed operation; returns something made from its work so it cannot be optimised away
+    abstract Object run();
+}
+
+//benchmark suite for generation, union/find, solving and rendering, run the way JMH runs a
+//benchmark: every benchmark is set up once per maze size, warmed up, then timed over several
+//measured iterations. run with "java MazeBenchmarks [name pattern]", e.g. "maze.*"; sizes
+//that would not fit in the heap are reported as skipped rather than run
+class MazeBenchmarks
+{
+    static final int[][] SIZES = {{50, 30}, {256, 256}, {1024, 1024}, {4096, 4096}};
+    static final int WARMUP = 3;
+    static final int MEASURED = 5;
+    static final int FRAMES = 1000; // frames per run of the incremental rendering benchmark
+    static final int LEGACY_LIMIT = 128 * 128; // the list-shifting Kruskal is quadratic, so stop timing it here
+    static volatile Object sink; // where results go so that no run is dead code
+
+    public static void main(String[] args)
+    {
+        String pattern = ".*";
+        if (args.length > 0)
+        {
+            pattern = args[0];
+        }
+        System.out.println(String.format("%-24s %-11s %11s %11s %12s", "benchmark", "size", "avg ms", "min ms", "cells/s"));
+        for (MazeBenchmark b: MazeBenchmarks.suite())
+        {
+            if (b.name.matches(pattern))
+            {
+                for (int[] size: SIZES)
+                {
+                    MazeBenchmarks.measure(b, size[0], size[1]);
+                }
+            }
+        }
+        if ("legacy".matches(pattern))
+        {
+            MazeBenchmarks.kruskal();
+        }
+        if ("race".matches(pattern))
+        {
+            MazeBenchmarks.race();
+        }
+        if ("tiled".matches(pattern))
+        {
+            MazeBenchmarks.tiled();
+        }
+        if ("agents".matches(pattern))
+        {
+            MazeBenchmarks.agents();
+        }
+        if ("batch".matches(pattern))
+        {
+            MazeBenchmarks.batch();
+        }
+    }
+
+    // sets a benchmark up at one size, warms it up and prints the measured iterations
+    static void measure(MazeBenchmark b, int width, int height)
+    {
+        long cells = (long) width * height;
+        String size = width + "x" + height;
+        Runtime runtime = Runtime.getRuntime();
+        if (cells * b.bytesPerCell > runtime.maxMemory() * 3 / 4)
+        {
+            System.out.println(String.format("%-24s %-11s skipped, needs about %d MB of heap", b.name, size,
+                                             cells * b.bytesPerCell >> 20));
+            return;
+        }
+        b.setUp(width, height);
+        for (int i = 0; i < WARMUP; i++)
+        {
+            sink = b.run();
+        }
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED; i++)
+        {
+            long start = System.nanoTime();
+            sink = b.run();
+            long nanos = System.nanoTime() - start;
+            total += nanos;
+            best = Math.min(best, nanos);
+        }
+        double average = total / (double) MEASURED;
+        System.out.println(String.format("%-24s %-11s %11.3f %11.3f %12.3g", b.name, size, average / 1e6,
+                                         best / 1e6, cells / (average / 1e9)));
+        b.setUp(1, 1); // let go of the big structures before the next size
+    }
+
+    // every benchmark in the suite
+    static ArrayList<MazeBenchmark> suite()
+    {
+        ArrayList<MazeBenchmark> suite = new ArrayList<MazeBenchmark>();
+        suite.add(new MazeBenchmark("maze.generate", 24)
+        {
+            Maze maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+            }
+            Object run() // what a new maze costs the game
+            {
+                this.maze.generate();
+                return this.maze.topology;
+            }
+        });
+        suite.add(new MazeBenchmark("maze.edges", 400)
+        {
+            Maze maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+            }
+            Object run() // the Nodes and Edges built from the maze's topology
+            {
+                this.maze.dropEdges();
+                return this.maze.cuts();
+            }
+        });
+        suite.add(new MazeBenchmark("kruskal.packed", 12)
+        {
+            KruskalGenerator generator = new KruskalGenerator();
+            int width;
+            int height;
+            long seed;
+            void setUp(int width, int height)
+            {
+                this.width = width;
+                this.height = height;
+            }
+            Object run()
+            {
+                this.seed++;
+                return this.generator.generate(this.width, this.height, this.seed);
+            }
+        });
+        suite.add(new MazeBenchmark("unionfind", 500)
+        {
+            Maze maze;
+            Edge[] edges;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+                this.maze.initializeNodes();
+                this.maze.initializeGrid();
+                this.edges = Maze.byWeight(this.maze.grid);
+            }
+            Object run() // UnionFind.find and union over every edge, in Kruskal order
+            {
+                UnionFind uf = new UnionFind(this.maze.nodes);
+                for (Edge e: this.edges)
+                {
+                    if (uf.find(e.a) != uf.find(e.b))
+                    {
+                        uf.union(e.a, e.b);
+                    }
+                }
+                return uf;
+            }
+        });
+        suite.add(new MazeBenchmark("disjointset", 16)
+        {
+            DisjointSet sets = new DisjointSet(0);
+            int[] pairs; // the two cells of every edge, in a random order
+            int cells;
+            void setUp(int width, int height)
+            {
+                this.cells = width * height;
+                this.pairs = new int[4 * this.cells];
+                int count = 0;
+                for (int cell = 0; cell < this.cells; cell++)
+                {
+                    if (cell % width < width - 1)
+                    {
+                        this.pairs[count++] = cell;
+                        this.pairs[count++] = cell + 1;
+                    }
+                    if (cell / width < height - 1)
+                    {
+                        this.pairs[count++] = cell;
+                        this.pairs[count++] = cell + width;
+                    }
+                }
+                this.pairs = Arrays.copyOf(this.pairs, count);
+                Random rand = new Random(1);
+                for (int i = count / 2 - 1; i > 0; i--)
+                {
+                    int j = rand.nextInt(i + 1);
+                    int a = this.pairs[2 * i];
+                    int b = this.pairs[2 * i + 1];
+                    this.pairs[2 * i] = this.pairs[2 * j];
+                    this.pairs[2 * i + 1] = this.pairs[2 * j + 1];
+                    this.pairs[2 * j] = a;
+                    this.pairs[2 * j + 1] = b;
+                }
+            }
+            Object run()
+            {
+                this.sets.reset(this.cells);
+                for (int i = 0; i < this.pairs.length; i += 2)
+                {
+                    this.sets.union(this.pairs[i], this.pairs[i + 1]);
+                }
+                return this.sets.components();
+            }
+        });
+        suite.add(new MazeBenchmark("maze.depthFirst", 450)
+        {
+            Maze maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+            }
+            Object run() // depthFirst called until it reaches the exit, the way onTick calls it
+            {
+                this.maze.startSearch("dfs");
+                while (!this.maze.search.found)
+                {
+                    this.maze.depthFirst();
+                }
+                return this.maze.search.expanded;
+            }
+        });
+        suite.add(new MazeBenchmark("maze.breadthFirst", 450)
+        {
+            Maze maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+            }
+            Object run()
+            {
+                this.maze.startSearch("bfs");
+                while (!this.maze.search.found)
+                {
+                    this.maze.breadthFirst();
+                }
+                return this.maze.search.expanded;
+            }
+        });
+        suite.add(new MazeBenchmark("grid.bfs", 30)
+        {
+            MazeGrid maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new KruskalGenerator().generate(width, height, 1);
+            }
+            Object run() // the cell by cell baseline for junction.solve
+            {
+                return GridSearch.solve("bfs", this.maze).expanded;
+            }
+        });
+        suite.add(new MazeBenchmark("junction.build", 40)
+        {
+            MazeGrid maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new KruskalGenerator().generate(width, height, 1);
+            }
+            Object run()
+            {
+                return new JunctionGraph(this.maze, 0, this.maze.cells() - 1);
+            }
+        });
+        suite.add(new MazeBenchmark("junction.solve", 40)
+        {
+            JunctionGraph graph;
+            int target;
+            void setUp(int width, int height)
+            {
+                MazeGrid maze = new KruskalGenerator().generate(width, height, 1);
+                this.target = maze.cells() - 1;
+                this.graph = new JunctionGraph(maze, 0, this.target);
+            }
+            Object run() // dijkstra over the junctions, then the path's corridors unfolded
+            {
+                JunctionSearch search = new JunctionSearch(this.graph, 0, this.target);
+                search.run();
+                return search.pathLength();
+            }
+        });
+        suite.add(new MazeBenchmark("treeindex.build", 30)
+        {
+            MazeGrid maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new KruskalGenerator().generate(width, height, 1);
+            }
+            Object run()
+            {
+                return new TreePathIndex(this.maze);
+            }
+        });
+        suite.add(new MazeBenchmark("treeindex.distance", 30)
+        {
+            TreePathIndex index;
+            int[] pairs = new int[2 * FRAMES];
+            void setUp(int width, int height)
+            {
+                this.index = new TreePathIndex(new KruskalGenerator().generate(width, height, 1));
+                Random random = new Random(1);
+                for (int i = 0; i < this.pairs.length; i++)
+                {
+                    this.pairs[i] = random.nextInt(width * height);
+                }
+            }
+            Object run() // FRAMES distances between random cells; one grid.bfs is one such query
+            {
+                long total = 0;
+                for (int i = 0; i < this.pairs.length; i += 2)
+                {
+                    total += this.index.distance(this.pairs[i], this.pairs[i + 1]);
+                }
+                return total;
+            }
+        });
+        suite.add(new MazeBenchmark("distancefield.build", 50)
+        {
+            MazeGrid maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new KruskalGenerator().generate(width, height, 1);
+            }
+            Object run() // the breadth first search out of the exit
+            {
+                return new DistanceField(this.maze, this.maze.cells() - 1);
+            }
+        });
+        suite.add(new MazeBenchmark("distancefield.moveExit", 50)
+        {
+            DistanceField field;
+            Random random = new Random(1);
+            void setUp(int width, int height)
+            {
+                MazeGrid maze = new KruskalGenerator().generate(width, height, 1);
+                this.field = new DistanceField(maze, maze.cells() - 1);
+            }
+            Object run() // relabelling for an exit somewhere else
+            {
+                this.field.moveExit(this.random.nextInt(this.field.distances.length));
+                return this.field.farthest();
+            }
+        });
+        suite.add(new MazeBenchmark("dijkstra.heap", 60)
+        {
+            MazeGrid maze;
+            void setUp(int width, int height)
+            {
+                this.maze = MazeBenchmarks.braided(width, height);
+            }
+            Object run() // the binary heap baseline for dijkstra.buckets
+            {
+                int exit = this.maze.cells() - 1;
+                DijkstraSearch search = new DijkstraSearch(this.maze, 0, exit, false);
+                search.run();
+                return search.cost();
+            }
+        });
+        suite.add(new MazeBenchmark("dijkstra.buckets", 60)
+        {
+            MazeGrid maze;
+            void setUp(int width, int height)
+            {
+                this.maze = MazeBenchmarks.braided(width, height);
+            }
+            Object run()
+            {
+                int exit = this.maze.cells() - 1;
+                DijkstraSearch search = new DijkstraSearch(this.maze, 0, exit, true);
+                search.run();
+                return search.cost();
+            }
+        });
+        suite.add(new MazeBenchmark("maze.makeImage", 900)
+        {
+            Maze maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+                this.maze.startSearch("bfs");
+                this.maze.search.run();
+                this.maze.backTrack();
+            }
+            Object run() // a full redraw of a solved maze
+            {
+                return this.maze.makeFullImage();
+            }
+        });
+        suite.add(new MazeBenchmark("maze.frame", 900)
+        {
+            Maze maze;
+            void setUp(int width, int height)
+            {
+                this.maze = new Maze(width, height);
+                this.maze.startSearch("bfs");
+                this.maze.makeImage();
+            }
+            Object run() // FRAMES incremental frames of a breadth first search, one step per frame
+            {
+                WorldImage frame = null;
+                for (int i = 0; i < FRAMES; i++)
+                {
+                    if (this.maze.search.found)
+                    {
+                        this.maze.startSearch("bfs");
+                    }
+                    this.maze.breadthFirst();
+                    frame = this.maze.makeImage();
+                }
+                return frame;
+            }
+        });
+        return suite;
+    }
+
+    // times tiled generation of a 4096x4096 maze with 1, 2, 4 ... threads up to the core count
+    static void tiled()
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("threads   tiled ms   speedup");
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads *= 2)
+        {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            TiledGenerator generator = new TiledGenerator(pool);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 5; run++)
+            {
+                long start = System.nanoTime();
+                generator.generate(4096, 4096, run);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            if (threads == 1)
+            {
+                single = best;
+            }
+            System.out.println(String.format("%-9d %8.1f %8.2fx", threads, best / 1e6, single / best));
+        }
+    }
+
+    // moves 262144 agents through a 2048x2048 maze with loops on 1, 2, 4 ... threads up to
+    // the core count and reports agent steps per second
+    static void agents()
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        MazeGrid maze = MazeBenchmarks.braided(2048, 2048);
+        DistanceField field = new DistanceField(maze, maze.cells() / 2);
+        System.out.println("threads   steps/s    moved   blocked  speedup");
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads *= 2)
+        {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            AgentSwarm swarm = new AgentSwarm(pool, maze.cells(), 1 << 18, 1);
+            for (int tick = 0; tick < 20; tick++) // spawn everyone and warm up
+            {
+                swarm.tick(field);
+            }
+            long steps = swarm.steps;
+            long moved = swarm.moved;
+            long blocked = swarm.blocked;
+            long start = System.nanoTime();
+            for (int tick = 0; tick < 50; tick++)
+            {
+                swarm.tick(field);
+            }
+            long nanos = System.nanoTime() - start;
+            pool.shutdown();
+            steps = swarm.steps - steps;
+            double rate = steps * 1e9 / nanos;
+            if (threads == 1)
+            {
+                single = rate;
+            }
+            System.out.println(String.format("%-9d %8.3g %7.1f%% %8.1f%% %7.2fx", threads, rate,
+                                             100.0 * (swarm.moved - moved) / steps,
+                                             100.0 * (swarm.blocked - blocked) / steps, rate / single));
+        }
+    }
+
+    // generates 512x512 mazes on 1, 2, 4 ... workers up to the core count, throwing them away
+    static void batch()
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        MazeSink discard = new StreamSink(OutputStream.nullOutputStream());
+        try
+        {
+            for (int workers = 1; workers <= cores; workers *= 2)
+            {
+                BatchGenerator batch = new BatchGenerator(512, 512, workers);
+                batch.run(20 * workers, 0, discard); // warm up
+                System.out.println(batch.run(200 * workers, 1000, discard));
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("batch: " + e.getMessage());
+        }
+    }
+
+    // races every search on one large maze
+    static void race()
+    {
+        MazeGrid maze = new KruskalGenerator().generate(2048, 2048, 1);
+        try
+        {
+            for (RaceResult r: new SolverRace(maze, 0, maze.cells() - 1).run())
+            {
+                System.out.println(r);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // compares the original sort/remove(0) Kruskal, a comparison-sorted packed Kruskal and
+    // the counting-order KruskalGenerator; legacy times above LEGACY_LIMIT are extrapolated
+    static void kruskal()
+    {
+        int[][] sizes = {{64, 64}, {128, 128}, {512, 512}, {1024, 1024}, {2048, 1024}};
+        KruskalGenerator generator = new KruskalGenerator();
+        long legacyAt = 0;
+        int legacyCells = 0;
+        System.out.println("cells       legacy ms     sorted ms   counting ms   speedup");
+        for (int[] size: sizes)
+        {
+            int cells = size[0] * size[1];
+            String legacy;
+            double legacyMs;
+            if (cells <= LEGACY_LIMIT)
+            {
+                legacyAt = MazeBenchmarks.best(size, 0, null);
+                legacyCells = cells;
+                legacyMs = legacyAt / 1e6;
+                legacy = String.format("%10.1f", legacyMs);
+            }
+            else
+            {
+                double scale = (double) cells / legacyCells;
+                legacyMs = legacyAt * scale * scale / 1e6;
+                legacy = String.format("%9.0f~", legacyMs);
+            }
+            double sortedMs = MazeBenchmarks.best(size, 1, generator) / 1e6;
+            double countingMs = MazeBenchmarks.best(size, 2, generator) / 1e6;
+            System.out.println(String.format("%-10d %s %13.1f %13.1f %8.0fx",
+                    cells, legacy, sortedMs, countingMs, legacyMs / countingMs));
+        }
+    }
+
+    // best of five runs, in nanoseconds, of one of the generators
+    static long best(int[] size, int which, KruskalGenerator generator)
+    {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++)
+        {
+            Random rand = new Random(run);
+            long start = System.nanoTime();
+            if (which == 0)
+            {
+                MazeBenchmarks.legacyKruskal(size[0], size[1], rand);
+            }
+            else if (which == 1)
+            {
+                MazeBenchmarks.sortedKruskal(size[0], size[1], rand);
+            }
+            else
+            {
+                generator.generate(size[0], size[1], run);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // a perfect maze with one wall in ten knocked through, so there are loops and the cheapest
+    // path has to be searched for
+    static MazeGrid braided(int width, int height)
+    {
+        MazeGrid maze = new KruskalGenerator().generate(width, height, 1);
+        Random random = new Random(1);
+        for (int cell = 0; cell < maze.cells(); cell++)
+        {
+            int dir = MazeGrid.RIGHT + random.nextInt(2);
+            boolean inside = (dir == MazeGrid.RIGHT && maze.xOf(cell) < width - 1)
+                || (dir == MazeGrid.DOWN && maze.yOf(cell) < height - 1);
+            if (inside && random.nextInt(10) == 0)
+            {
+                maze.open(cell, dir);
+            }
+        }
+        return maze;
+    }
+
+    // the original initializeMaze loop: sort, then grid.remove(0) and leftovers.remove per edge
+    static ArrayList<Edge> legacyKruskal(int width, int height, Random rand)
+    {
+        ArrayList<ArrayList<Node>> nodes = new ArrayList<ArrayList<Node>>();
+        ArrayList<Edge> grid = new ArrayList<Edge>();
+        for (int h = 0; h < height; h++)
+        {
+            nodes.add(new ArrayList<Node>());
+            for (int w = 0; w < width; w++)
+            {
+                Node n = new Node(new Posn(w, h));
+                nodes.get(h).add(n);
+                if (h > 0)
+                {
+                    grid.add(new Edge(nodes.get(h - 1).get(w), n, rand.nextInt(Maze.EDGE_WEIGHTS)));
+                }
+                if (w > 0)
+                {
+                    grid.add(new Edge(nodes.get(h).get(w - 1), n, rand.nextInt(Maze.EDGE_WEIGHTS)));
+                }
+            }
+        }
+        Collections.sort(grid, new EdgeSorter());
+        UnionFind uf = new UnionFind(nodes);
+        ArrayList<Edge> leftovers = new ArrayList<Edge>(grid);
+        while (grid.size() > 0)
+        {
+            Edge temp = grid.get(0);
+            if (!(uf.find(temp.a).equals(uf.find(temp.b))))
+            {
+                leftovers.remove(temp);
+                uf.union(temp.a, temp.b);
+            }
+            grid.remove(0);
+        }
+        return leftovers;
+    }
+
+    // packed Kruskal with a comparison sort of (weight, edge) keys instead of the counting order
+    static MazeGrid sortedKruskal(int width, int height, Random rand)
+    {
+        MazeGrid maze = new MazeGrid(width, height);
+        long[] keys = new long[2 * maze.cells()];
+        int edges = 0;
+        for (int cell = 0; cell < maze.cells(); cell++)
+        {
+            if (cell % width < width - 1)
+            {
+                keys[edges++] = ((long) rand.nextInt(Maze.EDGE_WEIGHTS) << 32) | (2 * cell);
+            }
+            if (cell / width < height - 1)
+            {
+                keys[edges++] = ((long) rand.nextInt(Maze.EDGE_WEIGHTS) << 32) | (2 * cell + 1);
+            }
+        }
+        Arrays.sort(keys, 0, edges);
+        DisjointSet forest = new DisjointSet(maze.cells());
+        for (int k = 0; k < edges; k++)
+        {
+            int edge = (int) keys[k];
+            int cell = edge >>> 1;
+            int dir = (edge & 1) == 0 ? MazeGrid.RIGHT : MazeGrid.DOWN;
+            if (forest.union(cell, MazeGrid.step(cell, dir, width)))
+            {
+                maze.open(cell, dir);
+            }
+        }
+        return maze;
+    }
+}
+
+class ExamplesMazeWorld
+{
+    Node n1 = new Node(new Posn(0, 0));
+    Node n2 = new Node(new Posn(0, 1));
+    Node n3 = new Node(new Posn(1, 0));
+    Node n4 = new Node(new Posn(1, 1));
+
+    Edge e1 = new Edge(n1, n2, 1);
+    Edge e2 = new Edge(n1, n3, 1);
+    Edge e3 = new Edge(n2, n4, 2);
+
+    ArrayList<ArrayList<Node>> quad = new ArrayList<ArrayList<Node>>();
+
+    Maze testMaze = new Maze();
+
+    void testEdgeSorter(Tester t)
+    {
+        EdgeSorter test = new EdgeSorter();
+        t.checkExpect(test.compare(e1, e2), 0);
+        t.checkExpect(test.compare(e1, e3), -1);
+        t.checkExpect(test.compare(e3, e2), 1);
+    }
+    void testUnionFind(Tester t)
+    {
+        quad.add(new ArrayList<Node>());
+        quad.add(new ArrayList<Node>());
+        quad.get(0).add(n1);
+        quad.get(0).add(n2);
+        quad.get(1).add(n3);
+        quad.get(1).add(n4);
+
+        UnionFind testUF = new UnionFind(quad);
+        t.checkExpect(testUF.find(n1), n1);
+        t.checkExpect(testUF.find(n2), n2);
+        testUF.union(n2, n4);
+        t.checkExpect(testUF.find(n2), n4);
+        t.checkExpect(testUF.connected(n2, n4), true);
+        t.checkExpect(testUF.connected(n1, n4), false);
+    }
+    void testDisjointSet(Tester t)
+    {
+        DisjointSet ds = new DisjointSet(6);
+        t.checkExpect(ds.components(), 6);
+        t.checkExpect(ds.union(0, 1), true);
+        t.checkExpect(ds.union(2, 3), true);
+        t.checkExpect(ds.union(1, 0), false);
+        t.checkExpect(ds.find(0), 1);
+        t.checkExpect(ds.union(0, 3), true);
+        t.checkExpect(ds.connected(1, 2), true);
+        t.checkExpect(ds.connected(4, 2), false);
+        t.checkExpect(ds.components(), 3);
+        ds.reset(2);
+        t.checkExpect(ds.size(), 2);
+        t.checkExpect(ds.components(), 2);
+        t.checkExpect(ds.connected(0, 1), false);
+        // a long chain of unions stays shallow and never recurses
+        DisjointSet chain = new DisjointSet(1000000);
+        for (int i = 1; i < 1000000; i++)
+        {
+            chain.union(i - 1, i);
+        }
+        t.checkExpect(chain.components(), 1);
+        t.checkExpect(chain.connected(0, 999999), true);
+    }
+
+    void testDirectionIsVertical(Tester t)
+    {
+        t.checkExpect(e1.directionIsVertical(), true);
+        t.checkExpect(e3.directionIsVertical(), false);
+    }
+    void testSetVertical(Tester t)
+    {
+        testMaze.buildEdges(); // the Nodes are only built when asked for
+        testMaze.setVertical();
+        for (Edge e: testMaze.grid)
+        {
+            if (e.directionIsVertical())
+            {
+                t.checkExpect(e.a.down, e.b);
+                t.checkExpect(e.b.up, e.a);
+            }
+        }
+    }
+    void testSetHorizontal(Tester t)
+    {
+        testMaze.buildEdges(); // the Nodes are only built when asked for
+        testMaze.setHorizontal();
+        for (Edge e: testMaze.grid)
+        {
+            if (!e.directionIsVertical())
+            {
+                t.checkExpect(e.a.right, e.b);
+                t.checkExpect(e.b.left, e.a);
+            }
+        }
+    }
+    Node a = new Node(new Posn(1, 1));
+
+    Node b = new Node(new Posn(1, 2));
+
+    Node c = new Node(new Posn(2, 2));
+
+
+
+    Edge ab = new Edge(a, b, 10);
+
+    Edge ac = new Edge(a, c, 20);
+
+
+
+    boolean testdirectionIsVertical(Tester t)
+    {
+
+        return t.checkExpect(ab.directionIsVertical(), true) &&
+
+                t.checkExpect(ac.directionIsVertical(), false);
+
+    }
+    Maze dummyworld = new Maze("dummy");
+
+    void testinitializeNodes(Tester t)
+    {
+        t.checkExpect(dummyworld.nodes.size() > 0, false);
+        dummyworld.initializeNodes();
+        t.checkExpect(dummyworld.nodes.size() > 0, true);
+    }
+    void testinitializeGrid(Tester t)
+    {
+        t.checkExpect(dummyworld.grid.size() > 0, false);
+        dummyworld.initializeNodes();
+        dummyworld.initializeGrid();
+        t.checkExpect(dummyworld.grid.size() > 0, true);
+    }
+    void testinitializeMaze(Tester t)
+    {
+        t.checkExpect(dummyworld.leftovers.size() > 0, false);
+        t.checkExpect(dummyworld.cuts.size() > 0, false);
+        dummyworld.initializeNodes();
+        dummyworld.initializeGrid();
+        t.checkExpect(dummyworld.grid.size() > 0, true);
+        dummyworld.initializeMaze();
+        t.checkExpect(dummyworld.leftovers.size() > 0, true);
+        t.checkExpect(dummyworld.cuts.size() > 0, true);
+        t.checkExpect(dummyworld.grid.size() > 0, false);
+    }
+
+    void testMazeGrid(Tester t)
+    {
+        MazeGrid g = new MazeGrid(3, 2);
+        t.checkExpect(g.index(2, 1), 5);
+        t.checkExpect(g.xOf(5), 2);
+        t.checkExpect(g.yOf(5), 1);
+        t.checkExpect(g.passages(), 0);
+        g.open(g.index(0, 0), MazeGrid.RIGHT);
+        g.open(g.index(1, 1), MazeGrid.UP);
+        t.checkExpect(g.isOpen(g.index(1, 0), MazeGrid.LEFT), true);
+        t.checkExpect(g.isOpen(g.index(1, 0), MazeGrid.DOWN), true);
+        t.checkExpect(g.neighbor(g.index(1, 0), MazeGrid.DOWN), 4);
+        t.checkExpect(g.neighbor(g.index(1, 0), MazeGrid.RIGHT), -1);
+        t.checkExpect(g.neighbor(0, MazeGrid.UP), -1);
+        t.checkExpect(g.neighbor(3, MazeGrid.LEFT), -1);
+        t.checkExpect(g.passages(), 2);
+        g.close(g.index(1, 0), MazeGrid.LEFT);
+        t.checkExpect(g.isOpen(0, MazeGrid.RIGHT), false);
+        int[] out = new int[4];
+        t.checkExpect(g.neighbors(g.index(1, 0), out), 1);
+        t.checkExpect(out[0], 4);
+    }
+    void testTopologyMatchesCuts(Tester t)
+    {
+        MazeGrid g = testMaze.topology;
+        t.checkExpect(testMaze.cuts, null); // not built until asked for
+        t.checkExpect(g.passages(), testMaze.cuts().size());
+        // the maze Kruskal's algorithm cuts out of the Nodes and Edges is the one generate built
+        Maze legacy = new Maze(Maze.MAZE_WIDTH, Maze.MAZE_HEIGHT, testMaze.seed);
+        legacy.initializeNodes();
+        legacy.initializeGrid();
+        legacy.initializeMaze();
+        t.checkExpect(g.passages(), legacy.cuts.size());
+        t.checkExpect(g.passages(), Maze.MAZE_WIDTH * Maze.MAZE_HEIGHT - 1);
+        for (Edge e: legacy.cuts)
+        {
+            int dir = MazeGrid.RIGHT;
+            if (e.directionIsVertical())
+            {
+                dir = MazeGrid.DOWN;
+            }
+            t.checkExpect(g.neighbor(g.index(e.a.p.x, e.a.p.y), dir), g.index(e.b.p.x, e.b.p.y));
+        }
+    }
+    void testManual(Tester t)
+    {
+        Maze m = new Maze();
+        int dir = MazeGrid.RIGHT;
+        if (!m.topology.isOpen(0, MazeGrid.RIGHT))
+        {
+            dir = MazeGrid.DOWN;
+        }
+        m.manual("x");
+        t.checkExpect(m.player, 0);
+        m.manual(dir == MazeGrid.RIGHT ? "right" : "down");
+        t.checkExpect(m.player, m.topology.neighbor(0, dir));
+        t.checkExpect(m.marks[0], GridSearch.EXPANDED);
+        t.checkExpect(m.marks[m.player], GridSearch.ON_PATH);
+        m.manual("up");
+        m.manual("left");
+        t.checkExpect(m.marks[m.player], GridSearch.ON_PATH);
+    }
+    void testGridSearch(Tester t)
+    {
+        MazeGrid g = new KruskalGenerator().generate(60, 40, 3);
+        GridSearch dfs = new DepthFirstSearch(g, 0, g.cells() - 1);
+        GridSearch bfs = new BreadthFirstSearch(g, 0, g.cells() - 1);
+        t.checkExpect(dfs.run(), true);
+        t.checkExpect(bfs.run(), true);
+        t.checkExpect(dfs.pathLength(), bfs.pathLength());
+        t.checkExpect(dfs.pathLength() > 1, true);
+        t.checkExpect(dfs.parents[0], 0);
+        GridSearch all = new BreadthFirstSearch(g, 0, -1); // no target, so it searches everything
+        while (all.step() >= 0)
+        {
+            t.checkExpect(all.expanded <= g.cells(), true);
+        }
+        t.checkExpect(all.expanded, g.cells());
+        t.checkExpect(all.found, false);
+        t.checkExpect(new DepthFirstSearch(g, 5, 5).pathLength(), 1);
+        t.checkExpect(GridSearch.named("bfs", g, 0, 1).name(), "bfs");
+    }
+    void testSolveRepeatedly(Tester t)
+    {
+        MazeGrid g = new KruskalGenerator().generate(30, 30, 11);
+        long[] before = g.bits.clone();
+        GridSearch dfs = GridSearch.named("dfs", g, 0, g.cells() - 1);
+        t.checkExpect(dfs.run(), true);
+        int expanded = dfs.expanded;
+        int length = dfs.pathLength();
+        dfs.markPath();
+        t.checkExpect(dfs.marks[0], GridSearch.ON_PATH);
+        dfs.reset();
+        t.checkExpect(dfs.found, false);
+        t.checkExpect(dfs.marks[0], (byte) 0);
+        t.checkExpect(dfs.run(), true);
+        t.checkExpect(dfs.expanded, expanded);
+        GridSearch bfs = GridSearch.named("bfs", g, 0, g.cells() - 1);
+        t.checkExpect(bfs.run(), true);
+        t.checkExpect(bfs.pathLength(), length);
+        t.checkExpect(Arrays.equals(g.bits, before), true);
+    }
+    void testSearchOnMaze(Tester t)
+    {
+        Maze m = new Maze();
+        m.onKeyEvent("b");
+        while (!m.search.found)
+        {
+            m.onTick();
+        }
+        m.onTick();
+        t.checkExpect(m.finished, true);
+        t.checkExpect(m.solving, false);
+        t.checkExpect(m.marks[0], GridSearch.ON_PATH);
+        t.checkExpect(m.marks[m.topology.cells() - 1], GridSearch.ON_PATH);
+        int onPath = 0;
+        for (int cell = 0; cell < m.topology.cells(); cell++)
+        {
+            if (m.marks[cell] == GridSearch.ON_PATH)
+            {
+                onPath++;
+            }
+        }
+        t.checkExpect(onPath, m.search.pathLength());
+        // upper case keys solve the same maze again
+        MazeGrid solved = m.topology;
+        m.onKeyEvent("D");
+        t.checkExpect(m.topology, solved);
+        t.checkExpect(m.finished, false);
+        t.checkExpect(m.search.name(), "dfs");
+        t.checkExpect(m.search.run(), true);
+        m.onKeyEvent("d");
+        t.checkExpect(m.topology == solved, false);
+        solved = m.topology;
+        m.onKeyEvent("A");
+        t.checkExpect(m.search.name(), "astar");
+        m.onKeyEvent("E");
+        t.checkExpect(m.topology, solved);
+        t.checkExpect(m.search.name(), "bidirectional");
+        while (!m.finished)
+        {
+            m.onTick();
+        }
+        t.checkExpect(m.marks[m.topology.cells() - 1], GridSearch.ON_PATH);
+        t.checkExpect(Maze.searchFor("x"), null);
+    }
+    void testInformedSearches(Tester t)
+    {
+        for (long seed = 1; seed <= 20; seed++)
+        {
+            MazeGrid g = new KruskalGenerator().generate(37, 23, seed);
+            GridSearch bfs = GridSearch.solve("bfs", g);
+            GridSearch astar = GridSearch.solve("astar", g);
+            GridSearch both = GridSearch.solve("bidirectional", g);
+            t.checkExpect(astar.found, true);
+            t.checkExpect(both.found, true);
+            t.checkExpect(astar.pathLength(), bfs.pathLength());
+            t.checkExpect(both.pathLength(), bfs.pathLength());
+            t.checkExpect(ExamplesMazeWorld.isPath(g, astar), true);
+            t.checkExpect(ExamplesMazeWorld.isPath(g, both), true);
+            t.checkExpect(astar.expanded <= bfs.expanded, true);
+        }
+        // on an open grid A* heads straight for the target
+        MazeGrid open = new MazeGrid(20, 20);
+        for (int cell = 0; cell < open.cells(); cell++)
+        {
+            if (open.xOf(cell) < 19)
+            {
+                open.open(cell, MazeGrid.RIGHT);
+            }
+            if (open.yOf(cell) < 19)
+            {
+                open.open(cell, MazeGrid.DOWN);
+            }
+        }
+        GridSearch astar = GridSearch.solve("astar", open);
+        t.checkExpect(astar.pathLength(), 39);
+        t.checkExpect(astar.expanded, 39);
+        t.checkExpect(GridSearch.solve("bidirectional", open).pathLength(), 39);
+        t.checkExpect(GridSearch.named("bidirectional", open, 7, 7).pathLength(), 1);
+        GridSearch walled = GridSearch.solve("bidirectional", new MazeGrid(3, 3));
+        t.checkExpect(walled.found, false);
+        t.checkExpect(walled.step(), -1);
+        t.checkExpect(GridSearch.solve("astar", new MazeGrid(3, 3)).found, false);
+    }
+    // does the search's path run through open passages from its source to its target
+    static boolean isPath(MazeGrid g, GridSearch search)
+    {
+        for (int cell = search.target; cell != search.source; cell = search.parents[cell])
+        {
+            int parent = search.parents[cell];
+            boolean joined = false;
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                if (g.neighbor(parent, dir) == cell)
+                {
+                    joined = true;
+                }
+            }
+            if (!joined)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    void testStepsPerTick(Tester t)
+    {
+        Maze m = new Maze(40, 40, 3);
+        m.onKeyEvent("B");
+        m.onTick();
+        t.checkExpect(m.search.expanded, 1);
+        m.onKeyEvent("+");
+        m.onKeyEvent("=");
+        m.onKeyEvent("+");
+        t.checkExpect(m.stepsPerTick, 8);
+        m.onTick();
+        t.checkExpect(m.search.expanded, 9);
+        m.onKeyEvent("-");
+        t.checkExpect(m.stepsPerTick, 4);
+        m.stepsPerTick = Maze.MAX_STEPS_PER_TICK;
+        m.onKeyEvent("+");
+        t.checkExpect(m.stepsPerTick, Maze.MAX_STEPS_PER_TICK);
+        m.onTick(); // far more steps than cells, so it stops at the exit
+        t.checkExpect(m.search.found, true);
+        m.onTick();
+        t.checkExpect(m.finished, true);
+        m.onKeyEvent("t");
+        t.checkExpect(m.tickMillis, Maze.TICK_MILLIS);
+        m.onKeyEvent("D");
+        t.checkExpect(m.advance() > 0, true);
+        while (!m.search.found)
+        {
+            m.onTick();
+        }
+        m.onKeyEvent("t");
+        t.checkExpect(m.tickMillis, 0);
+    }
+    void testBatchSolver(Tester t)
+    {
+        BatchReport report = new BatchSolver("astar", 30, 20).run(10, 5);
+        t.checkExpect(report.mazes, 10);
+        t.checkExpect(report.solved, 10);
+        long expanded = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            MazeGrid maze = new KruskalGenerator().generate(30, 20, 5 + i);
+            expanded += GridSearch.solve("astar", maze).expanded;
+        }
+        t.checkExpect(report.expanded, expanded);
+        t.checkExpect(report.mazesPerSecond() > 0, true);
+        t.checkExpect(report.nodesPerSecond() > 0, true);
+        t.checkExpect(report.toString().startsWith("10 30x20 mazes with astar (10 solved)"), true);
+        boolean rejected = false;
+        try
+        {
+            new BatchSolver("best", 30, 20);
+        }
+        catch (IllegalArgumentException e)
+        {
+            rejected = true;
+        }
+        t.checkExpect(rejected, true);
+    }
+    void testMetrics(Tester t)
+    {
+        Maze m = new Maze(30, 20, 8);
+        t.checkExpect(m.metrics.generations, 1);
+        t.checkExpect(m.metrics.finds >= 2L * (30 * 20 - 1), true);
+        t.checkExpect(m.metrics.averageFindDepth() >= 0, true);
+        t.checkExpect(m.metrics.generateNanos > 0, true);
+        t.checkExpect(m.metrics.weightsNanos > 0, true);
+        t.checkExpect(m.metrics.orderNanos > 0, true);
+        t.checkExpect(m.metrics.unionNanos > 0, true);
+        t.checkExpect(m.metrics.weightsNanos + m.metrics.orderNanos + m.metrics.unionNanos
+                      <= m.metrics.generateNanos, true);
+        t.checkExpect(m.metrics.edgesNanos, 0L);
+        m.cuts();
+        t.checkExpect(m.metrics.edgesNanos > 0, true);
+        t.checkExpect(m.metrics.values().get("edges.ms").doubleValue() > 0, true);
+        m.onKeyEvent("B");
+        m.makeImage();
+        m.stepsPerTick = Maze.MAX_STEPS_PER_TICK;
+        m.onTick();
+        m.onTick();
+        m.makeImage();
+        t.checkExpect(m.metrics.searches, 1);
+        t.checkExpect(m.metrics.search, "bfs");
+        t.checkExpect(m.metrics.expanded, m.search.expanded);
+        t.checkExpect(m.metrics.pathLength, m.search.pathLength());
+        t.checkExpect(m.metrics.peakFrontier, m.search.peakFrontier);
+        t.checkExpect(m.metrics.frames, 2L);
+        t.checkExpect(m.metrics.maxFrameNanos <= m.metrics.frameNanos, true);
+        m.onTick(); // a finished search is only recorded once
+        t.checkExpect(m.metrics.searches, 1);
+        m.onKeyEvent("d");
+        t.checkExpect(m.metrics.generations, 2);
+        t.checkExpect(m.metrics.values().get("search.pathLength"), m.metrics.pathLength);
+        t.checkExpect(m.metrics.values().size(), 15);
+        // a breadth first search along a corridor only ever has one cell waiting
+        MazeGrid corridor = new MazeGrid(10, 1);
+        for (int cell = 0; cell < 9; cell++)
+        {
+            corridor.open(cell, MazeGrid.RIGHT);
+        }
+        GridSearch bfs = GridSearch.solve("bfs", corridor);
+        t.checkExpect(bfs.peakFrontier, 1);
+        t.checkExpect(GridSearch.solve("bidirectional", corridor).peakFrontier, 2);
+        DisjointSet sets = new DisjointSet(4);
+        sets.union(0, 1);
+        sets.find(0);
+        t.checkExpect(sets.finds, 3L);
+        t.checkExpect(sets.findSteps, 1L);
+        sets.reset(4);
+        t.checkExpect(sets.finds, 0L);
+    }
+    void testJunctionGraph(Tester t)
+    {
+        // a corridor with a branch off its middle
+        //  0 - 1 - 2 - 3
+        //          |
+        //          6
+        MazeGrid g = new MazeGrid(4, 2);
+        g.open(0, MazeGrid.RIGHT);
+        g.open(1, MazeGrid.RIGHT);
+        g.open(2, MazeGrid.RIGHT);
+        g.open(2, MazeGrid.DOWN);
+        JunctionGraph graph = new JunctionGraph(g);
+        t.checkExpect(graph.vertices(), 7); // 1 is the only corridor cell; 4, 5 and 7 stand alone
+        t.checkExpect(graph.vertexOf[1], -1);
+        t.checkExpect(graph.edges(), 6);
+        int zero = graph.vertexOf[0];
+        t.checkExpect(graph.edgeTo[graph.firstEdge[zero]], graph.vertexOf[2]);
+        t.checkExpect(graph.edgeLength[graph.firstEdge[zero]], 2);
+        JunctionGraph pinned = new JunctionGraph(g, 1);
+        t.checkExpect(pinned.vertexOf[1] >= 0, true);
+        t.checkExpect(pinned.edges(), 8);
+        for (long seed = 1; seed <= 10; seed++)
+        {
+            MazeGrid maze = new KruskalGenerator().generate(41, 29, seed);
+            GridSearch bfs = GridSearch.solve("bfs", maze);
+            JunctionSearch junction = (JunctionSearch) GridSearch.solve("junction", maze);
+            t.checkExpect(junction.found, true);
+            t.checkExpect(junction.pathLength(), bfs.pathLength());
+            t.checkExpect(junction.distance(), bfs.pathLength() - 1);
+            t.checkExpect(ExamplesMazeWorld.isPath(maze, junction), true);
+            t.checkExpect(junction.graph.vertices() < maze.cells(), true);
+            t.checkExpect(junction.expanded < bfs.expanded, true);
+            int steps = 0;
+            for (int e = 0; e < junction.graph.edges(); e++)
+            {
+                steps += junction.graph.edgeLength[e];
+            }
+            t.checkExpect(steps, 2 * (maze.cells() - 1)); // every passage, once from each end
+            t.checkExpect(junction.graph.acyclic, true);
+            // knock through some walls so there are loops and the shortest path has to be found
+            Random random = new Random(seed);
+            for (int i = 0; i < 100; i++)
+            {
+                int cell = random.nextInt(maze.cells());
+                if (maze.xOf(cell) < maze.width - 1)
+                {
+                    maze.open(cell, MazeGrid.RIGHT);
+                }
+            }
+            JunctionSearch loops = (JunctionSearch) GridSearch.solve("junction", maze);
+            t.checkExpect(loops.graph.acyclic, false);
+            t.checkExpect(loops.pathLength(), GridSearch.solve("bfs", maze).pathLength());
+            t.checkExpect(ExamplesMazeWorld.isPath(maze, loops), true);
+        }
+        Maze m = new Maze(30, 20, 6);
+        m.onKeyEvent("J");
+        m.stepsPerTick = Maze.MAX_STEPS_PER_TICK;
+        m.onTick();
+        m.onTick();
+        t.checkExpect(m.finished, true);
+        t.checkExpect(m.marks[m.topology.cells() - 1], GridSearch.ON_PATH);
+        t.checkExpect(m.metrics.pathLength, GridSearch.solve("bfs", m.topology).pathLength());
+    }
+    void testTreePathIndex(Tester t)
+    {
+        MazeGrid maze = new KruskalGenerator().generate(45, 31, 12);
+        TreePathIndex index = new TreePathIndex(maze);
+        t.checkExpect(index.distance(0, 0), 0);
+        t.checkExpect(index.path(7, 7).length, 1);
+        Random random = new Random(12);
+        for (int i = 0; i < 200; i++)
+        {
+            int a = random.nextInt(maze.cells());
+            int b = random.nextInt(maze.cells());
+            GridSearch bfs = GridSearch.named("bfs", maze, a, b);
+            bfs.run();
+            int[] path = index.path(a, b);
+            t.checkExpect(index.distance(a, b), bfs.pathLength() - 1);
+            t.checkExpect(path.length, bfs.pathLength());
+            t.checkExpect(path[0], a);
+            t.checkExpect(path[path.length - 1], b);
+            boolean joined = true;
+            for (int j = 1; j < path.length; j++)
+            {
+                boolean next = false;
+                for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+                {
+                    next = next || maze.neighbor(path[j - 1], dir) == path[j];
+                }
+                joined = joined && next;
+            }
+            t.checkExpect(joined, true);
+            // the jump pointers find every ancestor, not just the ones on the way up
+            int depth = random.nextInt(index.depths[a] + 1);
+            int walked = a;
+            while (index.depths[walked] > depth)
+            {
+                walked = index.parents[walked];
+            }
+            t.checkExpect(index.ancestor(a, depth), walked);
+        }
+        // a corridor is the deepest tree there is
+        MazeGrid line = new MazeGrid(1000, 1);
+        for (int cell = 0; cell < 999; cell++)
+        {
+            line.open(cell, MazeGrid.RIGHT);
+        }
+        TreePathIndex deep = new TreePathIndex(line);
+        t.checkExpect(deep.distance(999, 400), 599);
+        t.checkExpect(deep.path(3, 1)[1], 2);
+        // separate parts have no path between them
+        TreePathIndex apart = new TreePathIndex(new MazeGrid(3, 3));
+        t.checkExpect(apart.distance(0, 8), -1);
+        t.checkExpect(apart.path(0, 8).length, 0);
+        maze.open(0, MazeGrid.RIGHT);
+        maze.open(0, MazeGrid.DOWN);
+        maze.open(1, MazeGrid.DOWN);
+        maze.open(maze.width, MazeGrid.RIGHT);
+        boolean rejected = false;
+        try
+        {
+            new TreePathIndex(maze);
+        }
+        catch (IllegalArgumentException e)
+        {
+            rejected = true;
+        }
+        t.checkExpect(rejected, true);
+        Maze m = new Maze(30, 20, 4);
+        int[] route = m.route(0, m.topology.cells() - 1);
+        t.checkExpect(route.length, GridSearch.solve("bfs", m.topology).pathLength());
+        t.checkExpect(m.route(5, 5).length, 1);
+        // once a wall is knocked down the maze has a loop, and routes are searched for instead
+        int last = m.topology.cells() - 1;
+        int wall = 0;
+        while (m.topology.isOpen(wall, MazeGrid.RIGHT) || !m.topology.inside(wall, MazeGrid.RIGHT))
+        {
+            wall++;
+        }
+        m.openWall(wall, MazeGrid.RIGHT);
+        route = m.route(0, last);
+        t.checkExpect(m.loops, true);
+        t.checkExpect(route.length, GridSearch.solve("bfs", m.topology).pathLength());
+        t.checkExpect(route[0], 0);
+        t.checkExpect(route[route.length - 1], last);
+        boolean joined = true;
+        for (int i = 1; i < route.length; i++)
+        {
+            boolean step = false;
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                step = step || m.topology.neighbor(route[i - 1], dir) == route[i];
+            }
+            joined = joined && step;
+        }
+        t.checkExpect(joined, true);
+        m.closeWall(wall, MazeGrid.RIGHT); // a tree again
+        t.checkExpect(m.route(0, last).length, GridSearch.solve("bfs", m.topology).pathLength());
+        t.checkExpect(m.loops, false);
+        t.checkExpect(m.pathIndex != null, true);
+    }
+    void testBatchGenerator(Tester t)
+    {
+        // carving into a used grid gives the same maze as a fresh one
+        KruskalGenerator generator = new KruskalGenerator();
+        MazeGrid grid = generator.generate(40, 30, 1);
+        generator.generate(grid, 2);
+        t.checkExpect(Arrays.equals(grid.bits, new KruskalGenerator().generate(40, 30, 2).bits), true);
+        t.checkExpect(grid.seed, 2L);
+        // every maze of a run reaches the sink exactly once, written the way MazeFile reads
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchGenerator batch = new BatchGenerator(40, 30, 3);
+        GenerationReport report = null;
+        try
+        {
+            report = batch.run(25, 100, new StreamSink(out));
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e.getMessage(), "no exception");
+        }
+        t.checkExpect(report.mazes, 25L);
+        t.checkExpect(report.mazesPerSecond() > 0, true);
+        boolean[] seen = new boolean[25];
+        boolean same = true;
+        int read = 0;
+        try
+        {
+            ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(out.toByteArray()));
+            ByteBuffer buffer = MazeFile.buffer();
+            for (MazeGrid maze = MazeFile.read(in, buffer); maze != null; maze = MazeFile.read(in, buffer))
+            {
+                int index = (int) (maze.seed - 100);
+                same = same && !seen[index] && maze.width == 40 && maze.height == 30
+                    && Arrays.equals(maze.bits, generator.generate(40, 30, maze.seed).bits);
+                seen[index] = true;
+                read++;
+            }
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e.getMessage(), "no exception");
+        }
+        t.checkExpect(read, 25);
+        t.checkExpect(same, true);
+        // once warm a worker allocates next to nothing for each maze
+        try
+        {
+            BatchGenerator one = new BatchGenerator(64, 64, 1);
+            report = one.run(200, 0, new StreamSink(OutputStream.nullOutputStream()));
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e.getMessage(), "no exception");
+        }
+        t.checkExpect(report.warmMazes, 199L);
+        t.checkExpect(report.bytesPerMaze() < 64, true);
+        // or each maze goes to a file of its own
+        try
+        {
+            Path directory = Files.createTempDirectory("mazes");
+            batch.run(4, 7, new DirectorySink(directory));
+            MazeGrid third = MazeFile.load(directory.resolve("maze-2.bin"));
+            t.checkExpect(third.seed, 9L);
+            t.checkExpect(third.word(5), generator.generate(40, 30, 9).word(5));
+            for (int i = 0; i < 4; i++)
+            {
+                Files.delete(directory.resolve("maze-" + i + ".bin"));
+            }
+            Files.delete(directory);
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e.getMessage(), "no exception");
+        }
+        // a failing sink stops the other workers after the maze they are on, and its failure
+        // comes out of run
+        final AtomicInteger calls = new AtomicInteger();
+        MazeSink failsOnce = new MazeSink()
+        {
+            public void accept(long index, MazeGrid maze) throws IOException
+            {
+                if (calls.incrementAndGet() == 5)
+                {
+                    throw new IOException("disk full");
+                }
+            }
+        };
+        String failure = null;
+        try
+        {
+            batch.run(100000, 0, failsOnce);
+        }
+        catch (IOException e)
+        {
+            failure = e.getMessage();
+        }
+        t.checkExpect(failure, "disk full");
+        t.checkExpect(calls.get() <= 5 + batch.workers - 1, true);
+        failure = null;
+        try
+        {
+            batch.run(1000, 0, new DirectorySink(Paths.get("no such directory")));
+        }
+        catch (IOException e)
+        {
+            failure = e.getClass().getName();
+        }
+        t.checkExpect(failure != null, true);
+        boolean rejected = false;
+        try
+        {
+            new BatchGenerator(10, 10, 0);
+        }
+        catch (IllegalArgumentException e)
+        {
+            rejected = true;
+        }
+        t.checkExpect(rejected, true);
+    }
+    void testPngExporter(Tester t)
+    {
+        MazeGrid maze = new KruskalGenerator().generate(9, 7, 4);
+        GridSearch search = GridSearch.solve("bfs", maze);
+        search.markPath();
+        PngExporter exporter = new PngExporter(maze, search.marks, 6, 1);
+        exporter.passages = true;
+        t.checkExpect(exporter.width, 55);
+        t.checkExpect(exporter.height, 43);
+        byte[] png = this.png(exporter);
+        java.awt.image.BufferedImage image = null;
+        try
+        {
+            image = javax.imageio.ImageIO.read(new ByteArrayInputStream(png));
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e.getMessage(), "no exception");
+        }
+        t.checkExpect(image.getWidth(), 55);
+        t.checkExpect(image.getHeight(), 43);
+        // every pixel is where makeImage would put it
+        boolean right = true;
+        for (int cell = 0; cell < maze.cells(); cell++)
+        {
+            int x = maze.xOf(cell) * 6;
+            int y = maze.yOf(cell) * 6;
+            int fill = PngExporter.PALETTE[exporter.colorOf(maze.xOf(cell), maze.yOf(cell))].getRGB();
+            right = right && image.getRGB(x + 1, y + 1) == fill; // a corner of the cell
+            right = right && image.getRGB(x + 3, y + 3) == Maze.PATH_COLOR.getRGB(); // its centre
+            int side = Maze.WALL_COLOR.getRGB();
+            if (maze.isOpen(cell, MazeGrid.RIGHT))
+            {
+                side = Maze.PATH_COLOR.getRGB();
+            }
+            right = right && image.getRGB(x + 6, y + 3) == side;
+            int below = Maze.WALL_COLOR.getRGB();
+            if (maze.isOpen(cell, MazeGrid.DOWN))
+            {
+                below = Maze.PATH_COLOR.getRGB();
+            }
+            right = right && image.getRGB(x + 3, y + 6) == below;
+            right = right && image.getRGB(x, y) == Maze.WALL_COLOR.getRGB() || maze.xOf(cell) > 0;
+        }
+        t.checkExpect(right, true);
+        t.checkExpect(image.getRGB(0, 42), Maze.WALL_COLOR.getRGB());
+        t.checkExpect(image.getRGB(54, 20), Maze.WALL_COLOR.getRGB());
+        t.checkExpect(image.getRGB(1, 1), Color.BLUE.getRGB()); // the path starts at the top left
+        // the same picture in many bands on several threads, and without marks
+        MazeGrid big = new KruskalGenerator().generate(300, 200, 4);
+        PngExporter whole = new PngExporter(big, null, 3, 1);
+        PngExporter banded = new PngExporter(big, null, 3, 3);
+        banded.bandRows = 16;
+        java.awt.image.BufferedImage one = null;
+        try
+        {
+            one = javax.imageio.ImageIO.read(new ByteArrayInputStream(this.png(whole)));
+            image = javax.imageio.ImageIO.read(new ByteArrayInputStream(this.png(banded)));
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e.getMessage(), "no exception");
+        }
+        t.checkExpect(Arrays.equals(one.getRGB(0, 0, 901, 601, null, 0, 901),
+                                    image.getRGB(0, 0, 901, 601, null, 0, 901)), true);
+        t.checkExpect(image.getRGB(1, 1), Maze.BACKGROUND_COLOR.getRGB());
+        t.checkExpect(image.getRGB(900, 600), Maze.WALL_COLOR.getRGB());
+        // adding up checksums gives the checksum of the whole
+        Adler32 first = new Adler32();
+        first.update(png, 0, 100);
+        Adler32 second = new Adler32();
+        second.update(png, 100, png.length - 100);
+        Adler32 both = new Adler32();
+        both.update(png, 0, png.length);
+        t.checkExpect(PngExporter.combine(first.getValue(), second.getValue(), png.length - 100),
+                      both.getValue());
+        boolean rejected = false;
+        try
+        {
+            new PngExporter(maze, null, 1, 1);
+        }
+        catch (IllegalArgumentException e)
+        {
+            rejected = true;
+        }
+        t.checkExpect(rejected, true);
+    }
+    byte[] png(PngExporter exporter)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            exporter.write(out);
+        }
+        catch (IOException e)
+        {
+            return new byte[0];
+        }
+        return out.toByteArray();
+    }
+    void testSearchTrace(Tester t)
+    {
+        SearchTrace trace = new SearchTrace();
+        Random random = new Random(3);
+        int[] cells = new int[1000];
+        for (int i = 0; i < cells.length; i++)
+        {
+            if (i % 7 == 0)
+            {
+                cells[i] = random.nextInt(Integer.MAX_VALUE); // far jumps take five bytes
+            }
+            else
+            {
+                cells[i] = Math.max(0, cells[Math.max(i - 1, 0)] + random.nextInt(9) - 4);
+            }
+            trace.add(cells[i]);
+        }
+        t.checkExpect(trace.length, 1000);
+        boolean same = true;
+        TraceReader all = trace.reader(0);
+        for (int i = 0; i < cells.length; i++)
+        {
+            same = same && all.next() == cells[i] && trace.get(i) == cells[i];
+        }
+        t.checkExpect(same, true);
+        t.checkExpect(all.hasNext(), false);
+        t.checkExpect(trace.reader(1000).hasNext(), false);
+        TraceReader middle = trace.reader(600);
+        t.checkExpect(middle.next(), cells[600]);
+        boolean rejected = false;
+        try
+        {
+            trace.reader(1001);
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            rejected = true;
+        }
+        t.checkExpect(rejected, true);
+        // a breadth first search moves in small steps, so its trace is small
+        MazeGrid big = new KruskalGenerator().generate(256, 256, 1);
+        BreadthFirstSearch bfs = new BreadthFirstSearch(big, 0, big.cells() - 1);
+        SearchTrace bfsTrace = new SearchTrace();
+        for (int cell = bfs.step(); cell >= 0; cell = bfs.step())
+        {
+            bfsTrace.add(cell);
+        }
+        t.checkExpect(bfsTrace.length, bfs.expanded);
+        t.checkExpect(bfsTrace.bytesPerCell() < 2.5, true);
+
+        // a replay shows exactly what the run showed, at any step, forwards or backwards
+        Maze maze = new Maze(20, 15, 3);
+        maze.onKeyEvent("B");
+        while (maze.solving)
+        {
+            maze.onTick();
+        }
+        byte[] live = maze.marks;
+        maze.onKeyEvent("p");
+        t.checkExpect(maze.replayStep, 0);
+        t.checkExpect(maze.marks != live, true);
+        maze.stepsPerTick = 25;
+        maze.onTick();
+        t.checkExpect(maze.replayStep, 25);
+        t.checkExpect(this.replayShows(maze, 25), true);
+        maze.seek(maze.trace.length);
+        t.checkExpect(Arrays.equals(maze.marks, live), true);
+        maze.onKeyEvent(",");
+        t.checkExpect(maze.replayStep, maze.trace.length - maze.trace.length / 10);
+        maze.seek(3);
+        t.checkExpect(this.replayShows(maze, 3), true);
+        maze.seek(-5);
+        t.checkExpect(maze.replayStep, 0);
+        t.checkExpect(Arrays.equals(maze.marks, new byte[maze.topology.cells()]), true);
+        maze.onKeyEvent("right"); // the player cannot move during a replay
+        t.checkExpect(maze.player, 0);
+        maze.onKeyEvent("p");
+        t.checkExpect(maze.replayStep, -1);
+        t.checkExpect(maze.marks, live);
+        // walking is recorded too
+        maze.onKeyEvent("M");
+        for (int i = 0; i < 12; i++)
+        {
+            maze.onKeyEvent(Maze.directionName(i % 4));
+        }
+        live = maze.marks.clone();
+        maze.onKeyEvent("p");
+        maze.stepsPerTick = 100;
+        maze.onTick();
+        t.checkExpect(Arrays.equals(maze.marks, live), true);
+    }
+    // do the maze's marks show the first steps of its trace, the last of them as the head
+    boolean replayShows(Maze maze, int steps)
+    {
+        byte[] expected = new byte[maze.topology.cells()];
+        for (int i = 0; i < steps; i++)
+        {
+            expected[maze.trace.get(i)] = GridSearch.EXPANDED;
+        }
+        expected[maze.trace.get(steps - 1)] = GridSearch.ON_PATH;
+        return Arrays.equals(maze.marks, expected);
+    }
+    void testAgentSwarm(Tester t)
+    {
+        MazeGrid maze = new KruskalGenerator().generate(30, 20, 3);
+        DistanceField field = new DistanceField(maze, maze.cells() - 1);
+        // one agent that never wanders walks the shortest way to the exit
+        ForkJoinPool one = new ForkJoinPool(1);
+        AgentSwarm alone = new AgentSwarm(one, maze.cells(), 1, 7);
+        alone.wander = 0;
+        t.checkExpect(alone.active(), 0);
+        alone.tick(field);
+        t.checkExpect(alone.active(), 1);
+        t.checkExpect(alone.steps, 0L); // coming into the maze is not a step
+        int distance = field.distance(alone.cells[0]);
+        for (int i = 0; i < distance; i++)
+        {
+            alone.tick(field);
+        }
+        t.checkExpect(alone.arrivals, 1L);
+        t.checkExpect(alone.moves[0], distance);
+        t.checkExpect(alone.active(), 0);
+        one.shutdown();
+        // a crowd on several threads never shares a cell
+        ForkJoinPool four = new ForkJoinPool(4);
+        AgentSwarm crowd = new AgentSwarm(four, maze.cells(), 400, 7);
+        boolean apart = true;
+        for (int tick = 0; tick < 60; tick++)
+        {
+            crowd.tick(field);
+            int taken = 0;
+            for (int cell = 0; cell < maze.cells(); cell++)
+            {
+                if (crowd.occupants.get(cell) != 0)
+                {
+                    taken++;
+                    apart = apart && crowd.cells[crowd.occupants.get(cell) - 1] == cell;
+                }
+            }
+            apart = apart && taken == crowd.active() && crowd.occupants.get(field.exit) == 0;
+        }
+        four.shutdown();
+        t.checkExpect(apart, true);
+        t.checkExpect(crowd.arrivals > 0L, true);
+        t.checkExpect(crowd.blocked > 0L, true);
+        t.checkExpect(crowd.moved + crowd.blocked + crowd.arrivals <= crowd.steps, true);
+        boolean rejected = false;
+        try
+        {
+            new AgentSwarm(ForkJoinPool.commonPool(), maze.cells(), maze.cells(), 7);
+        }
+        catch (IllegalArgumentException e)
+        {
+            rejected = true;
+        }
+        t.checkExpect(rejected, true);
+        // g lets bots loose on a game and takes them away again
+        Maze game = new Maze(12, 10, 5);
+        game.onKeyEvent("g");
+        t.checkExpect(game.swarm.count, Maze.SWARM_SIZE);
+        game.onTick();
+        game.onTick();
+        t.checkExpect(game.swarm.ticks, 2L);
+        t.checkExpect(game.swarm.active() > 0, true);
+        t.checkExpect(game.makeImage() != null, true);
+        game.onKeyEvent("g");
+        t.checkExpect(game.swarm, null);
+    }
+    void testDistanceField(Tester t)
+    {
+        MazeGrid maze = new KruskalGenerator().generate(33, 21, 9);
+        DistanceField field = new DistanceField(maze, maze.cells() - 1);
+        t.checkExpect(field.tree, true);
+        t.checkExpect(field.distance(maze.cells() - 1), 0);
+        t.checkExpect(field.distance(0), GridSearch.solve("bfs", maze).pathLength() - 1);
+        t.checkExpect(field.hint(maze.cells() - 1), -1);
+        // following the hints from anywhere walks straight to the exit
+        int cell = 0;
+        int steps = 0;
+        while (field.hint(cell) >= 0)
+        {
+            cell = maze.neighbor(cell, field.hint(cell));
+            steps++;
+        }
+        t.checkExpect(cell, maze.cells() - 1);
+        t.checkExpect(steps, field.distance(0));
+        Random random = new Random(9);
+        for (int i = 0; i < 20; i++)
+        {
+            field.moveExit(random.nextInt(maze.cells()));
+            DistanceField fresh = new DistanceField(maze, field.exit);
+            t.checkExpect(Arrays.equals(field.distances, fresh.distances), true);
+            t.checkExpect(field.farthest(), fresh.farthest());
+            boolean hints = true;
+            for (int c = 0; c < maze.cells(); c++)
+            {
+                hints = hints && field.hint(c) == fresh.hint(c);
+            }
+            t.checkExpect(hints, true);
+        }
+        // with loops, or with cells cut off, it searches again
+        MazeGrid open = new MazeGrid(4, 4);
+        open.open(0, MazeGrid.RIGHT);
+        open.open(0, MazeGrid.DOWN);
+        open.open(1, MazeGrid.DOWN);
+        open.open(4, MazeGrid.RIGHT);
+        DistanceField loops = new DistanceField(open, 0);
+        t.checkExpect(loops.tree, false);
+        t.checkExpect(loops.distance(5), 2);
+        t.checkExpect(loops.distance(15), -1);
+        t.checkExpect(loops.hint(15), -1);
+        loops.moveExit(5);
+        t.checkExpect(loops.distance(0), 2);
+        loops.moveExit(15);
+        t.checkExpect(loops.distance(0), -1);
+        t.checkExpect(loops.distance(15), 0);
+        Maze m = new Maze(30, 20, 2);
+        t.checkExpect(m.hint() >= 0, true);
+        m.manual(Maze.directionName(m.hint()));
+        t.checkExpect(m.exitField().distance(m.player), m.exitField().distance(0) - 1);
+        m.onKeyEvent("x");
+        t.checkExpect(m.exit, m.player);
+        t.checkExpect(m.hint(), -1);
+        m.onKeyEvent("h");
+        t.checkExpect(m.makeImage() != null, true);
+        t.checkExpect(m.heatLayer != null, true);
+        m.onKeyEvent("h");
+        // n draws the hint over the frame: the steps left, and a line into the next cell
+        Maze walker = new Maze(30, 20, 2);
+        WorldImage plain = walker.makeImage();
+        walker.onKeyEvent("n");
+        int left = walker.exitField().distance(0);
+        Posn above = new Posn(Maze.CELL_SIZE / 2, Maze.CELL_SIZE / 2 - Maze.CELL_SIZE);
+        WorldImage marker = new TextImage(above, left + " to the exit", 12, Color.MAGENTA)
+            .overlayImages(new LineImage(walker.cellCenter(0),
+                                         walker.cellCenter(MazeGrid.step(0, walker.hint(), 30)),
+                                         Color.MAGENTA));
+        t.checkExpect(walker.makeImage(), plain.overlayImages(marker));
+        walker.onKeyEvent(Maze.directionName(walker.hint()));
+        t.checkExpect(walker.hintMarker().equals(marker), false);
+        walker.onKeyEvent("x"); // on the exit there is only the count
+        Posn center = walker.cellCenter(walker.player);
+        t.checkExpect(walker.hintMarker(), new TextImage(new Posn(center.x, center.y - Maze.CELL_SIZE),
+                                                         "0 to the exit", 12, Color.MAGENTA));
+        walker.onKeyEvent("n");
+        t.checkExpect(walker.showHint, false);
+        m.onKeyEvent("B");
+        t.checkExpect(m.search.target, m.player);
+        m.onKeyEvent("b");
+        t.checkExpect(m.exit, m.topology.cells() - 1);
+        t.checkExpect(m.heatLayer, null);
+    }
+    void testDijkstraSearch(Tester t)
+    {
+        MazeGrid perfect = new KruskalGenerator().generate(30, 30, 3);
+        t.checkExpect(perfect.weight(31, MazeGrid.LEFT), perfect.weight(30, MazeGrid.RIGHT));
+        t.checkExpect(perfect.weight(31, MazeGrid.UP), EdgeWeights.weight(3, 1, 0, MazeGrid.DOWN));
+        t.checkExpect(perfect.weights()[2 * 31], (byte) perfect.weight(31, MazeGrid.RIGHT));
+        t.checkExpect(perfect.weights() == perfect.weights(), true);
+        // a perfect maze has one path, so the cheapest is the shortest
+        t.checkExpect(GridSearch.solve("dijkstra", perfect).pathLength(),
+                      GridSearch.solve("bfs", perfect).pathLength());
+        for (int size = 5; size <= 60; size += 11)
+        {
+            MazeGrid maze = MazeBenchmarks.braided(size, size + 3);
+            DijkstraSearch buckets = new DijkstraSearch(maze, 0, maze.cells() - 1, true);
+            DijkstraSearch heap = new DijkstraSearch(maze, 0, maze.cells() - 1, false);
+            t.checkExpect(buckets.run(), true);
+            t.checkExpect(heap.run(), true);
+            t.checkExpect(buckets.cost(), heap.cost());
+            t.checkExpect(ExamplesMazeWorld.isPath(maze, buckets), true);
+            t.checkExpect(ExamplesMazeWorld.pathCost(maze, buckets), buckets.cost());
+            // no other way is cheaper: relaxing every passage again changes nothing
+            boolean settled = true;
+            DijkstraSearch all = new DijkstraSearch(maze, 0, -1, true); // costs every cell
+            all.run();
+            int[] costs = all.costs;
+            for (int cell = 0; cell < maze.cells(); cell++)
+            {
+                for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+                {
+                    int next = maze.neighbor(cell, dir);
+                    settled = settled
+                        && (next < 0 || costs[next] <= costs[cell] + maze.weight(cell, dir));
+                }
+            }
+            t.checkExpect(settled, true);
+            t.checkExpect(costs[maze.cells() - 1], buckets.cost());
+        }
+        t.checkExpect(new DijkstraSearch(perfect, 0, 0, true).cost(), 0);
+        t.checkExpect(((DijkstraSearch) GridSearch.solve("dijkstra", new MazeGrid(3, 3))).cost(), -1);
+        Maze m = new Maze(20, 20, 5);
+        m.onKeyEvent("C");
+        t.checkExpect(m.search.name(), "dijkstra");
+    }
+    // the total weight of the passages on a search's path
+    static int pathCost(MazeGrid g, GridSearch search)
+    {
+        int cost = 0;
+        for (int cell = search.target; cell != search.source; cell = search.parents[cell])
+        {
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                if (g.neighbor(cell, dir) == search.parents[cell])
+                {
+                    cost += g.weight(cell, dir);
+                }
+            }
+        }
+        return cost;
+    }
+    void testBucketQueue(Tester t)
     {
-        grid = new ArrayList<Edge>();
-        Random rand = new Random();
-        //double for loop, initialize all the edges between nodes except for the top and left lines
-        for (int h = 1; h < MAZE_HEIGHT; h++) 
+        BucketQueue queue = new BucketQueue(5);
+        queue.push(3, 4);
+        queue.push(7, 1);
+        queue.push(2, 1);
+        queue.push(4, 3);
+        queue.push(3, 0); // a second copy of 3, under a lower key
+        t.checkExpect(queue.size(), 5);
+        t.checkExpect(queue.pop(), 3);
+        t.checkExpect(queue.lastKey(), 0);
+        int first = queue.pop();
+        int second = queue.pop();
+        t.checkExpect(first + second, 9); // 7 and 2, in either order
+        t.checkExpect(queue.lastKey(), 1);
+        for (int i = 0; i < 10; i++)
         {
-            for (int w = 1; w < MAZE_WIDTH; w++) 
-            {
-                Node temp = nodes.get(h).get(w);
-                grid.add(new Edge(temp.up, temp, rand.nextInt(100)));
-                grid.add(new Edge(temp.left, temp, rand.nextInt(100)));
-            }
+            queue.push(10 + i, 5); // the ring wraps around, and the bucket grows
+        }
+        t.checkExpect(queue.pop(), 4);
+        t.checkExpect(queue.pop(), 3); // the stale copy
+        t.checkExpect(queue.lastKey(), 4);
+        int sum = 0;
+        while (!queue.isEmpty())
+        {
+            sum += queue.pop();
         }
-        // initialize the first line of edges on the left
-        for (int h = 1; h < MAZE_HEIGHT; h++) 
+        t.checkExpect(sum, 145);
+        t.checkExpect(queue.lastKey(), 5);
+        boolean rejected = false;
+        try
         {
-            Node temp = nodes.get(h).get(0);
-            grid.add(new Edge(temp.up, temp, rand.nextInt(100)));
+            queue.push(1, 2); // below the last key popped
         }
-        // initialize the first line of edges on the top
-        for (int w = 1; w < MAZE_WIDTH; w++)
+        catch (IllegalArgumentException e)
         {
-            Node temp = nodes.get(0).get(w);
-            grid.add(new Edge(temp.left, temp, rand.nextInt(100)));
+            rejected = true;
         }
+        t.checkExpect(rejected, true);
+        queue.clear();
+        queue.push(1, 2);
+        t.checkExpect(queue.pop(), 1);
     }
-
-    //Create maze using Kruskal's algorithm to cut edges out of the maze
-    public void initializeMaze()
+    void testLifelongSearch(Tester t)
     {
-        Comparator<Edge> edgeSort = new EdgeSorter();
-        Collections.sort(grid, edgeSort);
-        UnionFind uf = new UnionFind(nodes);
-        cuts = new ArrayList<Edge>(); // the Spanning tree - the path through the maze
-        leftovers = new ArrayList<Edge>(grid); // the walls still in the maze
-        while (grid.size() > 0)
+        MazeGrid maze = MazeBenchmarks.braided(40, 30);
+        LifelongSearch lifelong = new LifelongSearch(maze, 0, maze.cells() - 1);
+        t.checkExpect(lifelong.run(), true);
+        t.checkExpect(lifelong.pathLength(), GridSearch.solve("bfs", maze).pathLength());
+        t.checkExpect(lifelong.distance(), lifelong.pathLength() - 1);
+        Random random = new Random(20);
+        int repaired = 0;
+        int fresh = 0;
+        for (int i = 0; i < 60; i++)
         {
-            Edge temp = grid.get(0); // the random Edge
-            if (!(uf.find(temp.a).equals(uf.find(temp.b))))
-            // if the parent of the two Nodes are not equal
+            int cell = random.nextInt(maze.cells());
+            int dir = random.nextInt(4);
+            if (!maze.inside(cell, dir))
             {
-                cuts.add(temp); // add the Edge to the Spanning Tree
-                leftovers.remove(temp); // the Edge is connected, so remove the wall
-                // sets the Parent of A to the Parent of B
-                uf.union(temp.a, temp.b);
+                continue;
             }
-            grid.remove(0);
-        }
-        for (Edge e: leftovers)
-        {
-            e.isWall = true;
-            if (e.directionIsVertical())
+            if (maze.isOpen(cell, dir))
             {
-                e.a.down = e.a;
-                e.b.up = e.b;
+                maze.close(cell, dir);
+                maze.close(MazeGrid.step(cell, dir, maze.width), MazeGrid.opposite(dir));
             }
             else
             {
-                e.a.right = e.a;
-                e.b.left = e.b;
+                maze.open(cell, dir);
+                maze.open(MazeGrid.step(cell, dir, maze.width), MazeGrid.opposite(dir));
             }
-        }
-        for (Edge e: cuts)
-        {
-            e.isWall = false;
-            if (e.directionIsVertical())
+            int before = lifelong.expanded;
+            lifelong.wallChanged(cell, MazeGrid.step(cell, dir, maze.width));
+            lifelong.run();
+            repaired += lifelong.expanded - before;
+            GridSearch bfs = GridSearch.solve("bfs", maze);
+            LifelongSearch again = new LifelongSearch(maze, 0, maze.cells() - 1);
+            again.run();
+            fresh += again.expanded;
+            t.checkExpect(lifelong.found, bfs.found);
+            t.checkExpect(lifelong.pathLength(), bfs.pathLength());
+            if (lifelong.found)
             {
-                e.a.down = e.b;
-                e.b.up = e.a;
+                t.checkExpect(ExamplesMazeWorld.isPath(maze, lifelong), true);
             }
-            else
+        }
+        t.checkExpect(repaired < fresh, true);
+        // walls through the maze's own Edges and Nodes
+        Maze m = new Maze(20, 15, 7);
+        m.onKeyEvent("R");
+        m.stepsPerTick = Maze.MAX_STEPS_PER_TICK;
+        m.onTick();
+        m.onTick();
+        t.checkExpect(m.finished, true);
+        int cuts = m.cuts().size();
+        t.checkExpect(m.openWall(0, MazeGrid.UP), false); // the edge of the maze
+        int cell = m.topology.cells() - 1;
+        int dir = MazeGrid.UP;
+        if (m.topology.isOpen(cell, dir))
+        {
+            dir = MazeGrid.LEFT;
+        }
+        t.checkExpect(m.openWall(cell, dir), true);
+        t.checkExpect(m.openWall(cell, dir), false);
+        t.checkExpect(m.cuts, null); // dropped until asked for again
+        t.checkExpect(m.cuts().size(), cuts + 1);
+        t.checkExpect(m.leftovers().size(), 20 * 14 + 19 * 15 - cuts - 1);
+        t.checkExpect(m.topology.isOpen(MazeGrid.step(cell, dir, 20), MazeGrid.opposite(dir)), true);
+        t.checkExpect(m.finished, false);
+        t.checkExpect(m.solving, true);
+        m.onTick();
+        m.onTick();
+        t.checkExpect(m.finished, true);
+        t.checkExpect(m.search.pathLength(), GridSearch.solve("bfs", m.topology).pathLength());
+        t.checkExpect(m.closeWall(cell, dir), true);
+        m.onTick();
+        m.onTick();
+        t.checkExpect(m.search.pathLength(), GridSearch.solve("bfs", m.topology).pathLength());
+        int onPath = 0;
+        for (int c = 0; c < m.topology.cells(); c++)
+        {
+            if (m.marks[c] == GridSearch.ON_PATH)
             {
-                e.a.right = e.b;
-                e.b.left = e.a;
+                onPath++;
             }
         }
+        t.checkExpect(onPath, m.search.pathLength());
+        // any other search starts over
+        m.onKeyEvent("B");
+        m.onMouseClicked(new Posn(Maze.CELL_SIZE / 2, Maze.CELL_SIZE - 1)); // the bottom of cell 0
+        t.checkExpect(m.search.expanded, 0);
+        t.checkExpect(m.topology.isOpen(0, MazeGrid.DOWN) == m.nodeAt(0).down.equals(m.nodeAt(20)),
+                      true);
+        // a wall changed while a lifelong search is being replayed ends the replay first
+        m.onKeyEvent("R");
+        m.onTick();
+        m.onTick();
+        byte[] live = m.marks;
+        m.onKeyEvent("p");
+        t.checkExpect(m.replayStep >= 0, true);
+        int open = m.topology.cells() - 1;
+        int side = MazeGrid.UP;
+        if (m.topology.isOpen(open, side))
+        {
+            side = MazeGrid.LEFT;
+        }
+        t.checkExpect(m.openWall(open, side), true);
+        t.checkExpect(m.replayStep, -1);
+        t.checkExpect(m.marks == live, true);
+        m.onTick();
+        m.onTick();
+        t.checkExpect(m.search.pathLength(), GridSearch.solve("bfs", m.topology).pathLength());
     }
-
-    public void depthFirst()
+    void testLongLongMap(Tester t)
     {
-        Node current = this.searched.get(0);
-        this.searched.remove(0);
-        current.checked = 1;
-
-        if (current.up != current)
+        LongLongMap map = new LongLongMap(3);
+        t.checkExpect(map.keys.length, 4);
+        t.checkExpect(map.containsKey(0), false);
+        t.checkExpect(map.putIfAbsent(0, 5), true);
+        t.checkExpect(map.putIfAbsent(0, 6), false);
+        t.checkExpect(map.get(0), 5L);
+        // any long is a key, and the table grows to keep them all
+        for (int i = 1; i < 5000; i++)
         {
-            this.searched.add(0, current.up);
-            Node upNode = current.up;
-            upNode.down = upNode;
-            visited.put(upNode, new Edge(current, upNode, 1));
+            map.putIfAbsent(ChunkedMaze.pack(i, -i), -i);
         }
-        if (current.down != current)
+        t.checkExpect(map.size(), 5000);
+        t.checkExpect(map.keys.length <= 2 * 8192, true);
+        boolean all = true;
+        for (int i = 1; i < 5000; i++)
         {
-            this.searched.add(0, current.down);
-            Node downNode = current.down;
-            downNode.up = downNode;
-            visited.put(downNode, new Edge(current, downNode, 1));
+            all = all && map.get(ChunkedMaze.pack(i, -i)) == -i;
         }
-        if (current.left != current)
+        t.checkExpect(all, true);
+        t.checkExpect(map.putIfAbsent(Long.MIN_VALUE, -1), true);
+        t.checkExpect(map.get(Long.MIN_VALUE), -1L);
+        t.checkExpect(map.containsKey(ChunkedMaze.pack(5000, -5000)), false);
+        boolean rejected = false;
+        try
         {
-            this.searched.add(0, current.left);
-            Node leftNode = current.left;
-            leftNode.right = leftNode;
-            visited.put(leftNode, new Edge(current, leftNode, 1));
+            map.get(7);
         }
-        if (current.right != current)
+        catch (NoSuchElementException e)
         {
-            this.searched.add(0, current.right);
-            Node rightNode = current.right;
-            rightNode.left = rightNode;
-            visited.put(rightNode, new Edge(current, rightNode, 1));
+            rejected = true;
         }
-
+        t.checkExpect(rejected, true);
     }
-    public void breadthFirst()
+    void testChunkedMaze(Tester t)
     {
-        Node current = this.searched.get(0);
-        this.searched.remove(0);
-        current.checked = 1;
-
-        if (current.up != current)
+        ChunkedMaze maze = new ChunkedMaze(42, 16, 8);
+        // both sides of every border agree, including between chunks and at negative coordinates
+        boolean agree = true;
+        for (int y = -40; y < 40; y++)
         {
-            this.searched.add(current.up);
-            Node upNode = current.up;
-            upNode.down = upNode;
-            visited.put(upNode, new Edge(current, upNode, 1));
+            for (int x = -40; x < 40; x++)
+            {
+                agree = agree
+                        && maze.isOpen(x, y, MazeGrid.RIGHT) == maze.isOpen(x + 1, y, MazeGrid.LEFT)
+                        && maze.isOpen(x, y, MazeGrid.DOWN) == maze.isOpen(x, y + 1, MazeGrid.UP);
+            }
         }
-        if (current.down != current)
+        t.checkExpect(agree, true);
+        t.checkExpect(maze.chunks.size(), 8); // the cache never grows past its capacity
+        t.checkExpect(maze.generated > 8L, true);
+        // a chunk built again after it was dropped is the same chunk
+        long[] first = maze.chunk(3, -2).bits.clone();
+        for (int cx = 10; cx < 30; cx++)
         {
-            this.searched.add(current.down);
-            Node downNode = current.down;
-            downNode.up = downNode;
-            visited.put(downNode, new Edge(current, downNode, 1));
+            maze.chunk(cx, 0);
         }
-        if (current.left != current)
+        long built = maze.generated;
+        t.checkExpect(Arrays.equals(maze.chunk(3, -2).bits, first), true);
+        t.checkExpect(maze.generated, built + 1);
+        maze.chunk(3, -2);
+        t.checkExpect(maze.generated, built + 1); // and now it is cached
+        // each border has exactly one door
+        int doors = 0;
+        for (int y = 0; y < 16; y++)
         {
-            this.searched.add(current.left);
-            Node leftNode = current.left;
-            leftNode.right = leftNode;
-            visited.put(leftNode, new Edge(current, leftNode, 1));
+            if (maze.isOpen(15, y, MazeGrid.RIGHT))
+            {
+                doors++;
+            }
         }
-        if (current.right != current)
+        t.checkExpect(doors, 1);
+        // a path can cross many chunks, with the cache far smaller than the chunks it touches
+        long from = ChunkedMaze.pack(0, 0);
+        long to = ChunkedMaze.pack(100, -70);
+        long[] path = maze.path(from, to, 1000000);
+        t.checkExpect(path != null, true);
+        t.checkExpect(path[0], from);
+        t.checkExpect(path[path.length - 1], to);
+        boolean joined = true;
+        for (int i = 1; i < path.length; i++)
         {
-            this.searched.add(current.right);
-            Node rightNode = current.right;
-            rightNode.left = rightNode;
-            visited.put(rightNode, new Edge(current, rightNode, 1));
+            boolean next = false;
+            for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
+            {
+                int x = ChunkedMaze.xOf(path[i - 1]);
+                int y = ChunkedMaze.yOf(path[i - 1]);
+                next = next || (ChunkedMaze.step(path[i - 1], dir) == path[i] && maze.isOpen(x, y, dir));
+            }
+            joined = joined && next;
         }
-
-    }
-    public void backTrack() // once you hit the end of the maze, show the path
-    {
-        Edge curEdge = visited.get(nodes.get(MAZE_HEIGHT - 1).get(MAZE_WIDTH - 1));
-        curEdge.b.checked = 2;
-        Node curNode = curEdge.a;
-
-        while (curNode != nodes.get(0).get(0))
+        t.checkExpect(joined, true);
+        t.checkExpect(maze.chunks.size() <= 8, true);
+        t.checkExpect(maze.path(from, to, 10), null);
+        t.checkExpect(new ChunkedMaze(42, 16, 100).path(from, to, 1000000).length, path.length);
+        InfiniteMaze world = new InfiniteMaze(new ChunkedMaze(5));
+        for (int dir = MazeGrid.UP; dir <= MazeGrid.LEFT; dir++)
         {
-            curNode.checked = 2;
-            curEdge = this.visited.get(curNode);
-            curNode = curEdge.a;
+            if (world.maze.isOpen(0, 0, dir))
+            {
+                world.onKeyEvent(Maze.directionName(dir));
+                t.checkExpect(Math.abs(world.x) + Math.abs(world.y), 1);
+                break;
+            }
         }
-        curNode.checked = 2;
+        t.checkExpect(world.makeImage() != null, true);
     }
-    public void manual(String key)
+    void testIntMinHeap(Tester t)
     {
-        Node current = this.searched.get(0);
-        current.checked = 0;
-        this.searched.remove(0);
-        if (key.equals("right"))
+        IntMinHeap heap = new IntMinHeap(10);
+        t.checkExpect(heap.isEmpty(), true);
+        heap.push(3, 30);
+        heap.push(5, 10);
+        heap.push(7, 20);
+        heap.push(1, 40);
+        t.checkExpect(heap.size(), 4);
+        t.checkExpect(heap.peek(), 5);
+        heap.push(1, 5); // lowers the key of a value already there
+        t.checkExpect(heap.size(), 4);
+        t.checkExpect(heap.peekKey(), 5L);
+        heap.push(5, 50); // and raises it
+        heap.remove(7);
+        t.checkExpect(heap.contains(7), false);
+        t.checkExpect(heap.pop(), 1);
+        t.checkExpect(heap.pop(), 3);
+        t.checkExpect(heap.pop(), 5);
+        t.checkExpect(heap.isEmpty(), true);
+        boolean rejected = false;
+        try
         {
-            Node nRight = current.right;
-            current.checked = 1;
-            current = nRight;
-            nRight.checked = 2;
-            this.searched.add(nRight);
+            heap.pop();
         }
-        if (key.equals("left"))
+        catch (NoSuchElementException e)
         {
-            Node nLeft = current.left;
-            current.checked = 1;
-            current = nLeft;
-            nLeft.checked = 2;
-            this.searched.add(nLeft);
+            rejected = true;
         }
-        if (key.equals("up"))
+        t.checkExpect(rejected, true);
+        heap.push(2, 1);
+        heap.clear();
+        t.checkExpect(heap.contains(2), false);
+        Random random = new Random(4);
+        IntMinHeap big = new IntMinHeap(1000);
+        for (int i = 0; i < 1000; i++)
         {
-            Node nUp = current.up;
-            current.checked = 1;
-            current = nUp;
-            nUp.checked = 2;
-            this.searched.add(nUp);
+            big.push(i, random.nextInt(100));
         }
-        if (key.equals("down"))
+        long last = Long.MIN_VALUE;
+        boolean ordered = true;
+        while (!big.isEmpty())
         {
-            Node nDown = current.down;
-            current.checked = 1;
-            current = nDown;
-            nDown.checked = 2;
-            this.searched.add(nDown);
+            long key = big.peekKey();
+            ordered = ordered && key >= last;
+            last = key;
+            big.pop();
         }
+        t.checkExpect(ordered, true);
     }
 
-    public WorldImage makeImage()
+    void testByWeight(Tester t)
     {
-        //canvas
-        WorldImage maze = new OverlayImages(new RectangleImage(new Posn(0, 0),
-                                                               MAZE_WIDTH * CELL_SIZE,
-                                                               MAZE_HEIGHT * CELL_SIZE,
-                                                               BACKGROUND_COLOR),
-                                            new FrameImage(new Posn(0, 0),
-                                                           MAZE_WIDTH * CELL_SIZE * 2,
-                                                           MAZE_HEIGHT * CELL_SIZE * 2,
-                                                           WALL_COLOR));
-        for (ArrayList<Node> a: nodes)
+        ArrayList<Edge> edges = new ArrayList<Edge>();
+        edges.add(e3);
+        edges.add(e1);
+        edges.add(ab);
+        edges.add(e2);
+        Edge[] ordered = Maze.byWeight(edges);
+        t.checkExpect(ordered.length, 4);
+        t.checkExpect(ordered[0], e1);
+        t.checkExpect(ordered[1], e2);
+        t.checkExpect(ordered[2], e3);
+        t.checkExpect(ordered[3], ab);
+    }
+    void testKruskalGenerator(Tester t)
+    {
+        KruskalGenerator gen = new KruskalGenerator();
+        MazeGrid g = gen.generate(40, 25, 7);
+        t.checkExpect(g.passages(), 40 * 25 - 1);
+        t.checkExpect(ExamplesMazeWorld.reachable(g), 40 * 25);
+        MazeGrid again = gen.generate(40, 25, 7);
+        t.checkExpect(Arrays.equals(g.bits, again.bits), true);
+        MazeGrid line = gen.generate(1, 5, 1);
+        t.checkExpect(line.passages(), 4);
+    }
+    // the number of cells reachable from cell 0
+    static int reachable(MazeGrid g)
+    {
+        boolean[] seen = new boolean[g.cells()];
+        int[] stack = new int[g.cells()];
+        int[] out = new int[4];
+        int top = 0;
+        int count = 1;
+        seen[0] = true;
+        stack[top++] = 0;
+        while (top > 0)
         {
-            for (Node n: a)
+            int cell = stack[--top];
+            int n = g.neighbors(cell, out);
+            for (int i = 0; i < n; i++)
             {
-                if (n.checked == 1)
-                {
-                    Posn cell = new Posn(n.p.x * CELL_SIZE + CELL_SIZE / 2,
-                                            n.p.y * CELL_SIZE + CELL_SIZE / 2);
-                    maze = maze.overlayImages(
-                                new RectangleImage(cell, CELL_SIZE, CELL_SIZE, Color.CYAN));
-                }
-                if (n.checked == 2)
+                if (!seen[out[i]])
                 {
-                    Posn cell = new Posn(n.p.x * CELL_SIZE + CELL_SIZE / 2,
-                                            n.p.y * CELL_SIZE + CELL_SIZE / 2);
-                    maze = maze.overlayImages(
-                                new RectangleImage(cell, CELL_SIZE, CELL_SIZE, Color.BLUE));
+                    seen[out[i]] = true;
+                    count++;
+                    stack[top++] = out[i];
                 }
             }
         }
-        for (Edge e: leftovers)
+        return count;
+    }
+
+    void testSolverRace(Tester t)
+    {
+        MazeGrid g = new KruskalGenerator().generate(50, 50, 5);
+        ArrayList<RaceResult> results = new ArrayList<RaceResult>();
+        try
         {
-            if (this.showWalls)
-            {
-                if (e.directionIsVertical())
-                {
-                    maze = maze.overlayImages(e.drawWallDown());
-                }
-                else
-                {
-                    maze = maze.overlayImages(e.drawWallRight());
-                }
-            }
+            results = new SolverRace(g, 0, g.cells() - 1).run();
         }
-        for (Edge e: cuts)
+        catch (InterruptedException e)
         {
-            if (this.showPath)
+            t.checkExpect(e, null);
+        }
+        t.checkExpect(results.size(), GridSearch.NAMES.length);
+        for (int i = 0; i < results.size(); i++)
+        {
+            RaceResult r = results.get(i);
+            t.checkExpect(r.place, i);
+            t.checkExpect(r.found, true);
+            t.checkExpect(r.pathLength, results.get(0).pathLength);
+            t.checkExpect(r.expanded > 0, true);
+        }
+        // a search that throws fails the race rather than leaving a hole in the results
+        ArrayList<GridSearch> searches = new ArrayList<GridSearch>();
+        searches.add(new BreadthFirstSearch(g, 0, g.cells() - 1));
+        searches.add(new BreadthFirstSearch(g, 0, g.cells() - 1)
+        {
+            int step()
             {
-                maze = maze.overlayImages(e.drawPath());
+                throw new IllegalStateException("broken search");
             }
+        });
+        String failure = null;
+        try
+        {
+            SolverRace.race(searches);
         }
-        return maze;
-    }
-
-    public void onKeyEvent(String ke)
-    {
-        if (ke.equals("left") || ke.equals("up") || ke.equals("down") || ke.equals("right"))
+        catch (InterruptedException e)
         {
-            this.manual(ke);
+            t.checkExpect(e, null);
         }
-        if (ke.equals("w"))
+        catch (IllegalStateException e)
         {
-            this.showWalls = !this.showWalls;
+            failure = e.getMessage();
         }
-        if (ke.equals("q"))
+        t.checkExpect(failure, "broken search");
+        // and an entrant interrupted before the start passes the interrupt on
+        RaceEntrant entrant = new RaceEntrant(new BreadthFirstSearch(g, 0, g.cells() - 1),
+                                              new CountDownLatch(1), new AtomicInteger());
+        boolean interrupted = false;
+        Thread.currentThread().interrupt();
+        try
         {
-            this.showPath = !this.showPath;
+            entrant.call();
         }
-        if (ke.equals("m")) // restart with manual control
+        catch (InterruptedException e)
         {
-            this.initializeNodes();
-            this.initializeGrid();
-            this.initializeMaze();
-            this.breadth = false;
-            this.depth = false;
+            interrupted = true;
         }
-        if (ke.equals("b")) // restart with a breadth first search
+        t.checkExpect(interrupted, true);
+        t.checkExpect(entrant.finishes.get(), 0);
+        // a search that cannot reach the target never ranks above one that did
+        MazeGrid walled = g.copy();
+        int last = g.cells() - 1;
+        walled.close(last - 1, MazeGrid.RIGHT);
+        walled.close(last - g.width, MazeGrid.DOWN);
+        searches = new ArrayList<GridSearch>();
+        searches.add(new BreadthFirstSearch(walled, 0, last)); // stops early, with no path
+        searches.add(new BreadthFirstSearch(g, 0, last));
+        try
         {
-            this.initializeNodes();
-            this.initializeGrid();
-            this.initializeMaze();
-            this.breadth = true;
-            this.depth = false;
+            results = SolverRace.race(searches);
         }
-        if (ke.equals("d")) // restart with a breadth first search
+        catch (InterruptedException e)
         {
-            this.initializeNodes();
-            this.initializeGrid();
-            this.initializeMaze();
-            this.depth = true;
-            this.breadth = false;
+            t.checkExpect(e, null);
         }
-
-    }
-    public void onTick()
-    {
-        if (visited.containsKey(nodes.get(MAZE_HEIGHT - 1).get(MAZE_WIDTH - 1)))
+        t.checkExpect(results.get(0).found, true);
+        t.checkExpect(results.get(0).place, 0);
+        t.checkExpect(results.get(1).found, false);
+        t.checkExpect(results.get(1).place, 1);
+        t.checkExpect(results.get(1).toString().endsWith("no path"), true);
+        // and when no search can reach it, all of them still get a place
+        try
         {
-            this.finished = true;
-            this.backTrack();
-            this.breadth = false;
-            this.depth = false;
+            results = new SolverRace(walled, 0, last).run();
         }
-        if (this.breadth)
+        catch (InterruptedException e)
         {
-            this.breadthFirst();
+            t.checkExpect(e, null);
         }
-        if (this.depth)
+        t.checkExpect(results.size(), GridSearch.NAMES.length);
+        boolean none = true;
+        for (int i = 0; i < results.size(); i++)
         {
-            this.depthFirst();
+            none = none && !results.get(i).found && results.get(i).place == i;
         }
+        t.checkExpect(none, true);
     }
-    public WorldEnd worldEnd()
+
+    void testIncrementalImage(Tester t)
     {
-        if (this.finished)
+        Maze m = new Maze();
+        m.onKeyEvent("B");
+        WorldImage first = m.makeImage();
+        WorldImage walls = m.wallLayer;
+        t.checkExpect(m.cellLayer != null, true);
+        for (int i = 0; i < 20; i++)
         {
-            this.backTrack();
-            return new WorldEnd(true, new OverlayImages(this.makeImage(),
-                    (new TextImage(new Posn(100, 100),
-                            "You Solved the Maze!", 36,
-                            Color.RED))));
+            m.onTick();
         }
-        else
+        t.checkExpect(m.dirtyCount > 0, true);
+        WorldImage next = m.makeImage();
+        t.checkExpect(next == first, false);
+        t.checkExpect(m.dirtyCount, 0);
+        t.checkExpect(m.wallLayer, walls);
+        for (int c = 0; c < m.topology.cells(); c++)
         {
-            return new WorldEnd(false, this.makeImage());
+            t.checkExpect(m.drawn[c], m.marks[c]);
         }
+        m.onKeyEvent("w");
+        m.makeImage();
+        t.checkExpect(m.wallLayer == walls, false);
+        m.onKeyEvent("i");
+        t.checkExpect(m.makeImage() != null, true);
+        t.checkExpect(m.cellLayer, null);
     }
 
-}
-//the union/find data structure
-
-class UnionFind
-{
-    HashMap<Node, Node> parents;
-    UnionFind(ArrayList<ArrayList<Node>> nodes) // takes in a 2D ArrayList of nodes
+    void testEllerGenerator(Tester t)
     {
-        this.parents = new HashMap<Node, Node>();
-        // double loop through the 2D list to get to all the nodes
-        for (ArrayList<Node> a: nodes)
+        MazeGrid g = new MazeGrid(37, 23);
+        try
         {
-            for (Node n: a)
-            {
-                this.parents.put(n, n); // map each node to itself
-            }
+            new EllerGenerator(37, 9).generate(23, new GridRowSink(g));
         }
-    }
-    public Node find(Node node)
-    {
-        if (parents.get(node).equals(node)) // if the node is mapped to itself
+        catch (IOException e)
+        {
+            t.checkExpect(e, null);
+        }
+        t.checkExpect(g.passages(), g.cells() - 1);
+        t.checkExpect(ExamplesMazeWorld.reachable(g), g.cells());
+        MazeGrid narrow = new MazeGrid(1, 4);
+        MazeGrid flat = new MazeGrid(6, 1);
+        try
         {
-            return node;
+            new EllerGenerator(1, 1).generate(4, new GridRowSink(narrow));
+            new EllerGenerator(6, 1).generate(1, new GridRowSink(flat));
         }
-        else // if the node is mapped to a different node
+        catch (IOException e)
         {
-            // continue along the chain of nodes until we find the head of the tree
-            return this.find(parents.get(node));
+            t.checkExpect(e, null);
         }
+        t.checkExpect(ExamplesMazeWorld.reachable(narrow), 4);
+        t.checkExpect(ExamplesMazeWorld.reachable(flat), 6);
     }
-    public void union(Node start, Node end)
+    void testPackedRowWriter(Tester t)
     {
-        parents.put(this.find(start), this.find(end));
+        MazeGrid g = new MazeGrid(40, 9);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            new EllerGenerator(40, 4).generate(9, new GridRowSink(g));
+            new EllerGenerator(40, 4).generate(9, new PackedRowWriter(bytes, 40, 9, 4));
+            Path file = Files.createTempFile("eller", ".maze");
+            Files.write(file, bytes.toByteArray());
+            MazeGrid loaded = MazeFile.load(file);
+            Files.delete(file);
+            t.checkExpect(loaded.width, 40);
+            t.checkExpect(loaded.height, 9);
+            t.checkExpect(loaded.seed, 4L);
+            for (int k = 0; k < g.words(); k++)
+            {
+                t.checkExpect(loaded.word(k), g.word(k));
+            }
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e, null);
+        }
     }
-}
-class ExamplesMazeWorld
-{
-    Node n1 = new Node(new Posn(0, 0));
-    Node n2 = new Node(new Posn(0, 1));
-    Node n3 = new Node(new Posn(1, 0));
-    Node n4 = new Node(new Posn(1, 1));
-
-    Edge e1 = new Edge(n1, n2, 1);
-    Edge e2 = new Edge(n1, n3, 1);
-    Edge e3 = new Edge(n2, n4, 2);
-
-    ArrayList<ArrayList<Node>> quad = new ArrayList<ArrayList<Node>>();
-
-    Maze testMaze = new Maze();
 
-    void testEdgeSorter(Tester t)
-    {
-        EdgeSorter test = new EdgeSorter();
-        t.checkExpect(test.compare(e1, e2), 0);
-        t.checkExpect(test.compare(e1, e3), -1);
-        t.checkExpect(test.compare(e3, e2), 1);
-    }
-    void testUnionFind(Tester t)
+    void testTiledGenerator(Tester t)
     {
-        quad.add(new ArrayList<Node>());
-        quad.add(new ArrayList<Node>());
-        quad.get(0).add(n1);
-        quad.get(0).add(n2);
-        quad.get(1).add(n3);
-        quad.get(1).add(n4);
-
-        UnionFind testUF = new UnionFind(quad);
-        t.checkExpect(testUF.find(n1), n1);
-        t.checkExpect(testUF.find(n2), n2);
-        testUF.union(n2, n4);
-        t.checkExpect(testUF.find(n2), n4);
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        MazeGrid a = new TiledGenerator(one, 16).generate(100, 70, 8);
+        MazeGrid b = new TiledGenerator(four, 16).generate(100, 70, 8);
+        t.checkExpect(a.passages(), a.cells() - 1);
+        t.checkExpect(ExamplesMazeWorld.reachable(a), a.cells());
+        t.checkExpect(Arrays.equals(a.bits, b.bits), true);
+        MazeGrid small = new TiledGenerator(four).generate(10, 3, 1);
+        t.checkExpect(ExamplesMazeWorld.reachable(small), 30);
+        MazeGrid exact = new TiledGenerator(four, 8).generate(32, 16, 2);
+        t.checkExpect(exact.passages(), exact.cells() - 1);
+        t.checkExpect(ExamplesMazeWorld.reachable(exact), exact.cells());
+        one.shutdown();
+        four.shutdown();
     }
 
-    void testDirectionIsVertical(Tester t)
+    void testSeededGeneration(Tester t)
     {
-        t.checkExpect(e1.directionIsVertical(), true);
-        t.checkExpect(e3.directionIsVertical(), false);
+        t.checkExpect(EdgeWeights.weight(42, 3, 4, MazeGrid.RIGHT), EdgeWeights.weight(42, 3, 4, MazeGrid.RIGHT));
+        t.checkExpect(EdgeWeights.weight(42, 3, 4, MazeGrid.RIGHT) < Maze.EDGE_WEIGHTS, true);
+        t.checkExpect(EdgeWeights.weight(42, 3, 4, MazeGrid.RIGHT) >= 0, true);
+        Maze a = new Maze(20, 12, 99);
+        Maze b = new Maze(20, 12, 99);
+        MazeGrid packed = new KruskalGenerator().generate(20, 12, 99);
+        t.checkExpect(Arrays.equals(a.topology.bits, b.topology.bits), true);
+        t.checkExpect(Arrays.equals(a.topology.bits, packed.bits), true);
+        t.checkExpect(a.topology.seed, 99L);
+        Maze c = new Maze(20, 12, 100);
+        t.checkExpect(Arrays.equals(a.topology.bits, c.topology.bits), false);
+        a.onKeyEvent("m");
+        t.checkExpect(a.seed == 99, false);
+        t.checkExpect(a.topology.seed, a.seed);
     }
-    void testSetVertical(Tester t)
+
+    void testMazeFile(Tester t)
     {
-        testMaze.setVertical();
-        for (Edge e: testMaze.grid)
+        try
         {
-            if (e.directionIsVertical())
+            Path file = Files.createTempFile("maze", ".bin");
+            MazeGrid g = new KruskalGenerator().generate(300, 200, 21);
+            MazeFile.save(g, file);
+            t.checkExpect(Files.size(file), (long) MazeFile.HEADER + 8L * g.words());
+            MappedMazeGrid loaded = MazeFile.load(file);
+            t.checkExpect(loaded.width, 300);
+            t.checkExpect(loaded.height, 200);
+            t.checkExpect(loaded.seed, 21L);
+            t.checkExpect(loaded.passages(), g.cells() - 1);
+            for (int k = 0; k < g.words(); k++)
             {
-                t.checkExpect(e.a.down, e.b);
-                t.checkExpect(e.b.up, e.a);
+                t.checkExpect(loaded.word(k), g.word(k));
+            }
+            t.checkExpect(new BreadthFirstSearch(loaded, 0, loaded.cells() - 1).run(), true);
+            // saving a mapped maze writes the same file again
+            Path copy = Files.createTempFile("maze", ".bin");
+            MazeFile.save(loaded, copy);
+            t.checkExpect(Arrays.equals(Files.readAllBytes(copy), Files.readAllBytes(file)), true);
+            Files.write(copy, new byte[] {1, 2, 3});
+            boolean rejected = false;
+            try
+            {
+                MazeFile.load(copy);
+            }
+            catch (IOException e)
+            {
+                rejected = true;
             }
+            t.checkExpect(rejected, true);
+            Files.delete(file);
+            Files.delete(copy);
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e, null);
         }
     }
-    void testSetHorizontal(Tester t)
+    void testMazeRoundTrip(Tester t)
     {
-        testMaze.setHorizontal();
-        for (Edge e: testMaze.grid)
+        Maze original = new Maze(30, 20, 5);
+        try
         {
-            if (!e.directionIsVertical())
+            Path file = Files.createTempFile("maze", ".bin");
+            MazeFile.save(original.topology, file);
+            Maze loaded = new Maze(MazeFile.load(file));
+            Files.delete(file);
+            t.checkExpect(loaded.seed, 5L);
+            t.checkExpect(loaded.topology instanceof MappedMazeGrid, true);
+            t.checkExpect(loaded.cuts, null);
+            t.checkExpect(loaded.cuts().size(), original.cuts().size());
+            t.checkExpect(loaded.leftovers().size(), original.leftovers().size());
+            for (int i = 0; i < original.cuts().size(); i++)
             {
-                t.checkExpect(e.a.right, e.b);
-                t.checkExpect(e.b.left, e.a);
+                t.checkExpect(loaded.cuts().get(i).a.p, original.cuts().get(i).a.p);
+                t.checkExpect(loaded.cuts().get(i).b.p, original.cuts().get(i).b.p);
+                t.checkExpect(loaded.cuts().get(i).weight, original.cuts().get(i).weight);
+            }
+            for (int i = 0; i < original.leftovers().size(); i++)
+            {
+                t.checkExpect(loaded.leftovers().get(i).a.p, original.leftovers().get(i).a.p);
+                t.checkExpect(loaded.leftovers().get(i).b.p, original.leftovers().get(i).b.p);
             }
+            loaded.onKeyEvent("B");
+            t.checkExpect(loaded.search.run(), true);
+        }
+        catch (IOException e)
+        {
+            t.checkExpect(e, null);
         }
-    }
-    Node a = new Node(new Posn(1, 1));
-
-    Node b = new Node(new Posn(1, 2));
-
-    Node c = new Node(new Posn(2, 2));
-
-
-
-    Edge ab = new Edge(a, b, 10);
-
-    Edge ac = new Edge(a, c, 20);
-
-
-
-    boolean testdirectionIsVertical(Tester t)
-    {
-
-        return t.checkExpect(ab.directionIsVertical(), true) &&
-
-                t.checkExpect(ac.directionIsVertical(), false);
-
-    }
-    Maze dummyworld = new Maze("dummy");
-
-    void testinitializeNodes(Tester t)
-    {
-        t.checkExpect(dummyworld.nodes.size() > 0, false);
-        dummyworld.initializeNodes();
-        t.checkExpect(dummyworld.nodes.size() > 0, true);
-    }
-    void testinitializeGrid(Tester t)
-    {
-        t.checkExpect(dummyworld.grid.size() > 0, false);
-        dummyworld.initializeNodes();
-        dummyworld.initializeGrid();
-        t.checkExpect(dummyworld.grid.size() > 0, true);
-    }
-    void testinitializeMaze(Tester t)
-    {
-        t.checkExpect(dummyworld.leftovers.size() > 0, false);
-        t.checkExpect(dummyworld.cuts.size() > 0, false);
-        dummyworld.initializeNodes();
-        dummyworld.initializeGrid();
-        t.checkExpect(dummyworld.grid.size() > 0, true);
-        dummyworld.initializeMaze();
-        t.checkExpect(dummyworld.leftovers.size() > 0, true);
-        t.checkExpect(dummyworld.cuts.size() > 0, true);
-        t.checkExpect(dummyworld.grid.size() > 0, false);
     }
 
     void testMountain(Tester t)